@@ -0,0 +1,44 @@
+package ch.epfl.alpano.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks with the profiling of the allocations enabled, which
+ * reports the bytes allocated by each operation next to its duration (cannot
+ * be instantiated).
+ * <p>
+ * The benchmarks are compiled with the sources of Alpano, JMH and its
+ * annotation processor (jmh-core and jmh-generator-annprocess) on the class
+ * path, for instance:
+ *
+ * <pre>
+ * javac -encoding UTF-8 -cp src:jmh-core.jar:jmh-generator-annprocess.jar:... -d bin-bench \
+ *     $(find src bench -name '*.java' ! -name '*Test.java')
+ * java -cp bin-bench:jmh-core.jar:... ch.epfl.alpano.bench.Benchmarks [JMH options]
+ * </pre>
+ *
+ * The usual options of JMH can be given, for instance a regular expression
+ * selecting the benchmarks to run, or <code>-p panorama=NIESEN</code>.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+public final class Benchmarks {
+
+    // private builder, this class cannot be instantiated
+    private Benchmarks() {
+    }
+
+    public static void main(String[] args)
+            throws RunnerException, CommandLineOptionException {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
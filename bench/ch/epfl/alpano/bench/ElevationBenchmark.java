@@ -0,0 +1,108 @@
+package ch.epfl.alpano.bench;
+
+import static java.lang.Math.toRadians;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+
+/**
+ * Benchmarks of the continuous elevation model and of the elevation profiles,
+ * which are queried for every step of every ray of a panorama
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ElevationBenchmark {
+
+    // number of points queried by a call, to amortize the loop
+    private static final int POINTS = 1024;
+    private static final GeoPoint NIESEN = new GeoPoint(toRadians(7.65),
+            toRadians(46.73));
+    private static final int PROFILE_LENGTH = 300_000;
+
+    private ContinuousElevationModel dem;
+    private ElevationProfile profile;
+    private double[] longitudes;
+    private double[] latitudes;
+    private double[] distances;
+
+    @Setup
+    public void setUp() {
+        dem = SyntheticTerrain.continuousElevationModel();
+        profile = new ElevationProfile(dem, NIESEN, toRadians(180),
+                PROFILE_LENGTH);
+
+        // the same points at each run, scattered around the Niesen
+        Random random = new Random(2017);
+        longitudes = new double[POINTS];
+        latitudes = new double[POINTS];
+        distances = new double[POINTS];
+        for (int i = 0; i < POINTS; ++i) {
+            longitudes[i] = toRadians(6.5 + 2 * random.nextDouble());
+            latitudes[i] = toRadians(46 + 1.5 * random.nextDouble());
+            distances[i] = PROFILE_LENGTH * random.nextDouble();
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void elevationAt(Blackhole bh) {
+        for (int i = 0; i < POINTS; ++i) {
+            bh.consume(dem.elevationAt(longitudes[i], latitudes[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void slopeAt(Blackhole bh) {
+        for (int i = 0; i < POINTS; ++i) {
+            bh.consume(dem.slopeAt(longitudes[i], latitudes[i]));
+        }
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public ElevationProfile profileConstruction() {
+        return new ElevationProfile(dem, NIESEN, toRadians(180),
+                PROFILE_LENGTH);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void profilePositionAt(Blackhole bh) {
+        for (int i = 0; i < POINTS; ++i) {
+            bh.consume(profile.positionAt(distances[i]));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(POINTS)
+    public void profileElevationAt(Blackhole bh) {
+        for (int i = 0; i < POINTS; ++i) {
+            bh.consume(profile.elevationAt(distances[i]));
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package ch.epfl.alpano.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.gui.ImagePainter;
+import ch.epfl.alpano.gui.Labelizer;
+import ch.epfl.alpano.gui.PanoramaRenderer;
+import ch.epfl.alpano.gui.PanoramaUserParameters;
+import ch.epfl.alpano.gui.PredefinedPanoramas;
+import javafx.scene.Node;
+import javafx.scene.image.Image;
+
+/**
+ * Benchmarks of the steps of the display of the predefined panoramas: their
+ * computation, their labels and their image. The panoramas are computed
+ * sequentially, to measure the work done rather than the number of
+ * processors.
+ * <p>
+ * The labels and the image are JavaFX objects, which can be built without
+ * starting the JavaFX application.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class PanoramaBenchmark {
+
+    @Param({ "NIESEN", "JURA_ALPS", "MOUNT_RACINE", "FINSTERAARHORN",
+            "SAUVABELIN_TOUR", "PELICAN_BEACH" })
+    public String panorama;
+
+    private PanoramaComputer computer;
+    private Labelizer labelizer;
+    private PanoramaParameters parameters;
+    private PanoramaParameters displayParameters;
+    private Panorama computed;
+    private ImagePainter painter;
+
+    @Setup
+    public void setUp() throws ReflectiveOperationException {
+        PanoramaUserParameters p = (PanoramaUserParameters) PredefinedPanoramas.class
+                .getField(panorama).get(null);
+        parameters = p.panoramaParameters();
+        displayParameters = p.panoramaDisplayParameters();
+
+        computer = new PanoramaComputer(
+                SyntheticTerrain.continuousElevationModel());
+        labelizer = new Labelizer(SyntheticTerrain.continuousElevationModel(),
+                SyntheticTerrain.summits());
+
+        computed = computer.computePanorama(parameters);
+        painter = PanoramaRenderer.standardPainter(computed);
+    }
+
+    @Benchmark
+    public Panorama computePanorama() {
+        return computer.computePanorama(parameters);
+    }
+
+    @Benchmark
+    public List<Node> labels() {
+        return labelizer.labels(displayParameters);
+    }
+
+    @Benchmark
+    public List<Node> labelsFromPanorama() {
+        return labelizer.labels(displayParameters, computed,
+                Labelizer.DEFAULT_DEPTH_TOLERANCE);
+    }
+
+    @Benchmark
+    public Image renderPanorama() {
+        return PanoramaRenderer.renderPanorama(computed, painter);
+    }
+}
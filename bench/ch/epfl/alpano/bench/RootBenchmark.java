@@ -0,0 +1,85 @@
+package ch.epfl.alpano.bench;
+
+import static java.lang.Math.toRadians;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.DoubleUnaryOperator;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.ElevationProfile;
+
+/**
+ * Benchmarks of the search of the intersection of a ray with the ground, as
+ * done for every pixel of a panorama
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RootBenchmark {
+
+    // the intervals used by the computation of the panoramas
+    private static final double INTERVAL = 64;
+    private static final double SMALL_INTERVAL = 4;
+    private static final int PROFILE_LENGTH = 300_000;
+    // the ray starts above the wave and reaches it a few tens of kilometers
+    // away, despite the curvature of the Earth
+    private static final double RAY_ELEVATION = 1500;
+    private static final double RAY_SLOPE = -0.03;
+
+    private DoubleUnaryOperator rayToGround;
+    private double rootInterval;
+
+    @Setup
+    public void setUp() {
+        ContinuousElevationModel dem = SyntheticTerrain
+                .continuousElevationModel();
+        ElevationProfile profile = new ElevationProfile(dem,
+                new GeoPoint(toRadians(7.65), toRadians(46.73)),
+                toRadians(180), PROFILE_LENGTH);
+        rayToGround = PanoramaComputer.rayToGroundDistance(profile,
+                RAY_ELEVATION, RAY_SLOPE);
+        rootInterval = Math2.firstIntervalContainingRoot(rayToGround, 0,
+                PROFILE_LENGTH, INTERVAL);
+        if (rootInterval == Double.POSITIVE_INFINITY) {
+            throw new IllegalStateException("the ray does not hit the ground");
+        }
+    }
+
+    @Benchmark
+    public double firstIntervalContainingRoot() {
+        return Math2.firstIntervalContainingRoot(rayToGround, 0,
+                PROFILE_LENGTH, INTERVAL);
+    }
+
+    @Benchmark
+    public double improveRoot() {
+        return Math2.improveRoot(rayToGround, rootInterval,
+                rootInterval + INTERVAL, SMALL_INTERVAL);
+    }
+
+    @Benchmark
+    public double improveRootIllinois() {
+        return Math2.improveRootIllinois(rayToGround, rootInterval,
+                rootInterval + INTERVAL, SMALL_INTERVAL);
+    }
+}
@@ -0,0 +1,107 @@
+package ch.epfl.alpano.bench;
+
+import static java.lang.Math.PI;
+import static java.lang.Math.cos;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.summit.Summit;
+
+/**
+ * A synthetic terrain covering the predefined panoramas, so that the
+ * benchmarks need no HGT file (cannot be instantiated). Its elevation is a
+ * wave, as the one of the tests, and its summits are some of the tops of the
+ * wave.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+public final class SyntheticTerrain {
+
+    // extent of the terrain, in arc seconds
+    private static final int MIN_LONGITUDE = 5 * 3600, MAX_LONGITUDE = 11 * 3600;
+    private static final int MIN_LATITUDE = 44 * 3600, MAX_LATITUDE = 48 * 3600;
+
+    // period and amplitude of the wave, in samples and meters
+    private static final int PERIOD = 100;
+    private static final double HEIGHT = 1000;
+
+    // number of periods between two summits, in both directions
+    private static final int SUMMIT_SPACING = 10;
+
+    // private builder, this class cannot be instantiated
+    private SyntheticTerrain() {
+    }
+
+    /**
+     * The discrete elevation model of the terrain
+     *
+     * @return the elevation model
+     */
+    public static DiscreteElevationModel discreteElevationModel() {
+        return new WavyDEM(new Interval2D(
+                new Interval1D(MIN_LONGITUDE, MAX_LONGITUDE),
+                new Interval1D(MIN_LATITUDE, MAX_LATITUDE)));
+    }
+
+    /**
+     * The continuous elevation model of the terrain
+     *
+     * @return the elevation model
+     */
+    public static ContinuousElevationModel continuousElevationModel() {
+        return new ContinuousElevationModel(discreteElevationModel());
+    }
+
+    /**
+     * The summits of the terrain, on the tops of the wave
+     *
+     * @return the summits
+     */
+    public static List<Summit> summits() {
+        List<Summit> summits = new ArrayList<>();
+        int step = SUMMIT_SPACING * PERIOD;
+        // the wave is at its top where its sine is 1 and its cosine is 1
+        for (int x = MIN_LONGITUDE + PERIOD / 4; x <= MAX_LONGITUDE; x += step) {
+            for (int y = MIN_LATITUDE; y <= MAX_LATITUDE; y += step) {
+                summits.add(new Summit("S" + x + "_" + y,
+                        new GeoPoint(toRadians(x / 3600d), toRadians(y / 3600d)),
+                        (int) HEIGHT));
+            }
+        }
+        return Collections.unmodifiableList(summits);
+    }
+
+    private static final class WavyDEM implements DiscreteElevationModel {
+        private final Interval2D extent;
+
+        private WavyDEM(Interval2D extent) {
+            this.extent = extent;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public Interval2D extent() {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            double x1 = PI * 2d * x / PERIOD;
+            double y1 = PI * 2d * y / PERIOD;
+            return (1 + sin(x1) * cos(y1)) / 2d * HEIGHT;
+        }
+    }
+}
@@ -162,31 +162,115 @@ public interface Math2 {
         checkArgument(valueAtX1 * valueAtX2 <= 0);
         checkArgument(epsilon > 0);
 
-        // check if one of the bounds is a zero
-        if (valueAtX1 == 0) {
-            return x1;
-        } else if (valueAtX2 == 0) {
-            return x2;
-        }
+        // the value at the kept bound is known from the previous step
+        while (true) {
+            // check if one of the bounds is a zero
+            if (valueAtX1 == 0) {
+                return x1;
+            } else if (valueAtX2 == 0) {
+                return x2;
+            }
 
-        // middle of the interval
-        double xm = (x1 + x2) / 2.0;
+            // interval small enough
+            if (abs(x1 - x2) <= epsilon) {
+                return x1;
+            }
 
-        // interval small enough
-        if (abs(x1 - x2) <= epsilon) {
-            return x1;
+            // middle of the interval
+            double xm = (x1 + x2) / 2.0;
+            double valueAtXm = f.applyAsDouble(xm);
+
+            // choose the next interval
+            if (valueAtXm * valueAtX1 < 0) {
+                x2 = xm;
+                valueAtX2 = valueAtXm;
+            } else if (valueAtXm * valueAtX2 < 0) {
+                x1 = xm;
+                valueAtX1 = valueAtXm;
+            } else {
+                // f(xm) == 0
+                return xm;
+            }
         }
+    }
 
-        double valueAtXm = f.applyAsDouble(xm);
+    /**
+     * Find an interval containing the root of a function using the Illinois
+     * variant of the false position method: the interval is cut where the
+     * chord between its bounds crosses zero, the value kept at a bound being
+     * halved when the other one moved twice in a row. The cuts are kept at
+     * epsilon / 2 from the bounds. On a smooth function, it needs much fewer
+     * evaluations than the binary search for the same precision.
+     * 
+     * @param f
+     *            the function
+     * @param x1
+     *            lower bound
+     * @param x2
+     *            upper bound
+     * @param epsilon
+     *            a size giving the precision
+     * @return the lower bound of an interval containing the root, not larger
+     *         than epsilon, as the one given by
+     *         {@link #improveRoot(DoubleUnaryOperator, double, double, double)}
+     * @throws IllegalArgumentException
+     *             if the given interval do not contain a root
+     * @throws IllegalArgumentException
+     *             if epsilon is not positive or if x1 is larger than x2
+     */
+    public static double improveRootIllinois(DoubleUnaryOperator f,
+            double x1, double x2, double epsilon) {
 
-        // choose the next interval
-        if (valueAtXm * valueAtX1 < 0) {
-            return improveRoot(f, x1, xm, epsilon);
-        } else if (valueAtXm * valueAtX2 < 0) {
-            return improveRoot(f, xm, x2, epsilon);
-        }
+        double valueAtX1 = f.applyAsDouble(x1);
+        double valueAtX2 = f.applyAsDouble(x2);
+
+        checkArgument(valueAtX1 * valueAtX2 <= 0);
+        checkArgument(epsilon > 0 && x1 <= x2);
 
-        // f(xm) == 0
-        return xm;
+        // the bound moved by the previous step, -1 for x1 and 1 for x2
+        int moved = 0;
+
+        while (true) {
+            // check if one of the bounds is a zero
+            if (valueAtX1 == 0) {
+                return x1;
+            } else if (valueAtX2 == 0) {
+                return x2;
+            }
+
+            // interval small enough
+            if (x2 - x1 <= epsilon) {
+                return x1;
+            }
+
+            // point where the chord crosses zero, kept away from the bounds
+            // so that the interval also shrinks when one bound is stuck
+            double margin = epsilon / 2;
+            double xm = max(x1 + margin, min(x2 - margin,
+                    (x1 * valueAtX2 - x2 * valueAtX1)
+                            / (valueAtX2 - valueAtX1)));
+            double valueAtXm = f.applyAsDouble(xm);
+
+            // choose the next interval, halving the value kept at the bound
+            // that did not move twice in a row
+            if (valueAtXm * valueAtX1 < 0) {
+                x2 = xm;
+                valueAtX2 = valueAtXm;
+                if (moved == 1) {
+                    valueAtX1 /= 2;
+                }
+                moved = 1;
+            } else if (valueAtXm * valueAtX2 < 0) {
+                x1 = xm;
+                valueAtX1 = valueAtXm;
+                if (moved == -1) {
+                    valueAtX2 /= 2;
+                }
+                moved = -1;
+            } else {
+                // f(xm) == 0
+                return xm;
+            }
+        }
     }
 }
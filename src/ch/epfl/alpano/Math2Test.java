@@ -6,6 +6,7 @@ import static ch.epfl.alpano.Math2.firstIntervalContainingRoot;
 import static ch.epfl.alpano.Math2.floorMod;
 import static ch.epfl.alpano.Math2.haversin;
 import static ch.epfl.alpano.Math2.improveRoot;
+import static ch.epfl.alpano.Math2.improveRootIllinois;
 import static ch.epfl.alpano.Math2.lerp;
 import static ch.epfl.alpano.Math2.sq;
 import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
@@ -21,6 +22,7 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleUnaryOperator;
 import static ch.epfl.alpano.Azimuth.*;
 
@@ -205,6 +207,54 @@ public class Math2Test {
         assertEquals(-PI, mPi, 1e-10);
     }
 
+    @Test
+    public void improveRootEvaluatesEachPointOnce() {
+        AtomicInteger evaluations = new AtomicInteger();
+        improveRoot(x -> { evaluations.incrementAndGet(); return x - 1; }, 0, 64, 4);
+        // the bounds and 4 halvings
+        assertEquals(6, evaluations.get());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void improveRootIllinoisFailsWhenIntervalDoesNotContainRoot() {
+        improveRootIllinois(new Sin(), 1, 2, 1e-10);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void improveRootIllinoisFailsWhenBoundsAreReversed() {
+        improveRootIllinois(new Sin(), 3.2, 3.1, 1e-10);
+    }
+
+    @Test
+    public void improveRootIllinoisWorksOnSin() {
+        double pi = improveRootIllinois(new Sin(), 3.1, 3.2, 1e-10);
+        assertEquals(PI, pi, 1e-10);
+
+        double mPi = improveRootIllinois(new Sin(), -4, -3.1, 1e-10);
+        assertEquals(-PI, mPi, 1e-10);
+    }
+
+    @Test
+    public void improveRootIllinoisGivesLowerBoundOfSmallInterval() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            double root = rng.nextDouble() * 64;
+            double curvature = rng.nextDouble() * 0.01;
+            DoubleUnaryOperator f = x -> (x - root) * (1 + curvature * x);
+            double x = improveRootIllinois(f, 0, 64, 4);
+            assertTrue(x <= root && root <= x + 4);
+        }
+    }
+
+    @Test
+    public void improveRootIllinoisNeedsFewerEvaluationsOnSmoothFunction() {
+        AtomicInteger bisection = new AtomicInteger(), illinois = new AtomicInteger();
+        DoubleUnaryOperator f = x -> 1000 - 0.05 * x - 0.0001 * x * x;
+        improveRoot(x -> { bisection.incrementAndGet(); return f.applyAsDouble(x); }, 0, 3000, 4);
+        improveRootIllinois(x -> { illinois.incrementAndGet(); return f.applyAsDouble(x); }, 0, 3000, 4);
+        assertTrue(illinois.get() < bisection.get() / 2);
+    }
+
     private static double nextAngle(Random rng) {
         return rng.nextDouble() * 2d * PI;
     }
@@ -1,24 +1,28 @@
 package ch.epfl.alpano;
 
+import java.nio.FloatBuffer;
 import java.util.Arrays;
 
 /**
- * Represent a panorama
+ * Represent a panorama. Its samples are kept in float buffers, either wrapping
+ * the arrays of its builder or viewing the mapping of a file
  * 
  * @author Mathieu Chevalley (274698)
  * @author Louis Amaudruz (271808)
+ * @see PanoramaFile
  */
 public final class Panorama {
 
     private final PanoramaParameters panoramaParameters;
-    private final float[] distance;
-    private final float[] longitude;
-    private final float[] latitude;
-    private final float[] elevation;
-    private final float[] slope;
-
-    private Panorama(PanoramaParameters pano, float[] dist, float[] longi,
-            float[] lati, float[] eleva, float[] slo) {
+    private final FloatBuffer distance;
+    private final FloatBuffer longitude;
+    private final FloatBuffer latitude;
+    private final FloatBuffer elevation;
+    private final FloatBuffer slope;
+
+    private Panorama(PanoramaParameters pano, FloatBuffer dist,
+            FloatBuffer longi, FloatBuffer lati, FloatBuffer eleva,
+            FloatBuffer slo) {
         panoramaParameters = pano;
         distance = dist;
         longitude = longi;
@@ -27,6 +31,26 @@ public final class Panorama {
         slope = slo;
     }
 
+    /**
+     * Construct a panorama from buffers of its samples, which must not be
+     * modified afterwards
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param channels
+     *            the buffers of the channels, in the order of the channels,
+     *            the sample at (x, y) being at index x + y * width
+     * @return the panorama
+     */
+    static Panorama of(PanoramaParameters parameters, FloatBuffer[] channels) {
+        assert channels.length == Channel.values().length;
+        return new Panorama(parameters, channels[Channel.DISTANCE.ordinal()],
+                channels[Channel.LONGITUDE.ordinal()],
+                channels[Channel.LATITUDE.ordinal()],
+                channels[Channel.ELEVATION.ordinal()],
+                channels[Channel.SLOPE.ordinal()]);
+    }
+
     /**
      * Parameters getter
      * 
@@ -50,7 +74,7 @@ public final class Panorama {
      */
     public float distanceAt(int x, int y) {
         checkIndex(x, y);
-        return distance[parameters().linearSampleIndex(x, y)];
+        return distance.get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -66,7 +90,7 @@ public final class Panorama {
      */
     public float longitudeAt(int x, int y) {
         checkIndex(x, y);
-        return longitude[parameters().linearSampleIndex(x, y)];
+        return longitude.get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -82,7 +106,7 @@ public final class Panorama {
      */
     public float latitudeAt(int x, int y) {
         checkIndex(x, y);
-        return latitude[parameters().linearSampleIndex(x, y)];
+        return latitude.get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -98,7 +122,7 @@ public final class Panorama {
      */
     public float elevationAt(int x, int y) {
         checkIndex(x, y);
-        return elevation[parameters().linearSampleIndex(x, y)];
+        return elevation.get(parameters().linearSampleIndex(x, y));
 
     }
 
@@ -115,7 +139,7 @@ public final class Panorama {
      */
     public float slopeAt(int x, int y) {
         checkIndex(x, y);
-        return slope[parameters().linearSampleIndex(x, y)];
+        return slope.get(parameters().linearSampleIndex(x, y));
     }
 
     /**
@@ -131,11 +155,77 @@ public final class Panorama {
      */
     public float distanceAt(int x, int y, float d) {
         if (parameters().isValidSampleIndex(x, y)) {
-            return distance[parameters().linearSampleIndex(x, y)];
+            return distance.get(parameters().linearSampleIndex(x, y));
         }
         return d;
     }
 
+    /**
+     * The channels of a panorama
+     */
+    public enum Channel {
+        DISTANCE, LONGITUDE, LATITUDE, ELEVATION, SLOPE
+    }
+
+    /**
+     * Copy of all the values of a channel, row after row, so that they can be
+     * processed without calling the accessors at each index
+     * 
+     * @param channel
+     *            the channel
+     * @return the values of the channel, the one at (x, y) being at index
+     *         x + y * width
+     */
+    public float[] channel(Channel channel) {
+        FloatBuffer values = channelBuffer(channel);
+        float[] copy = new float[values.remaining()];
+        values.get(copy);
+        return copy;
+    }
+
+    /**
+     * Read-only view of the values of a channel, row after row
+     * 
+     * @param channel
+     *            the channel
+     * @return the view, positioned on the first value
+     */
+    FloatBuffer channelBuffer(Channel channel) {
+        FloatBuffer values;
+        switch (channel) {
+        case DISTANCE:
+            values = distance;
+            break;
+        case LONGITUDE:
+            values = longitude;
+            break;
+        case LATITUDE:
+            values = latitude;
+            break;
+        case ELEVATION:
+            values = elevation;
+            break;
+        default:
+            values = slope;
+            break;
+        }
+        // the buffers are only read by index, their position is always 0
+        return values.asReadOnlyBuffer();
+    }
+
+    // number of bytes of the samples of the panorama held on the heap, the
+    // channels viewing the mapping of a file taking none
+    long sizeInBytes() {
+        long size = 0;
+        for (FloatBuffer values : new FloatBuffer[] { distance, longitude,
+                latitude, elevation, slope }) {
+            if (!values.isDirect()) {
+                size += (long) values.capacity() * Float.BYTES;
+            }
+        }
+        return size;
+    }
+
     // check the indexes
     private void checkIndex(int x, int y) {
         if (!panoramaParameters.isValidSampleIndex(x, y)) {
@@ -144,7 +234,8 @@ public final class Panorama {
     }
 
     /**
-     * Builder for the panorama class
+     * Builder for the panorama class. Samples at distinct indexes may be set
+     * concurrently, as long as the panorama is built once they are all set.
      * 
      * @author Mathieu Chevalley (274698)
      * @author Louis Amaudruz (271808)
@@ -291,6 +382,31 @@ public final class Panorama {
             return this;
         }
 
+        // a builder whose column x holds the samples of the column
+        // sourceColumns[x] of this one, set independently of this one, each
+        // sample being written once, row after row
+        Builder withColumns(int[] sourceColumns) {
+            requireNonBuild();
+            assert sourceColumns.length == parameters.width();
+            Builder copy = new Builder(parameters);
+            copyColumns(distance, copy.distance, sourceColumns);
+            copyColumns(longitude, copy.longitude, sourceColumns);
+            copyColumns(latitude, copy.latitude, sourceColumns);
+            copyColumns(elevation, copy.elevation, sourceColumns);
+            copyColumns(slope, copy.slope, sourceColumns);
+            return copy;
+        }
+
+        private static void copyColumns(float[] from, float[] to,
+                int[] sourceColumns) {
+            int width = sourceColumns.length;
+            for (int row = 0; row < from.length; row += width) {
+                for (int x = 0; x < width; ++x) {
+                    to[row + x] = from[row + sourceColumns[x]];
+                }
+            }
+        }
+
         /**
          * Build the panorama
          * 
@@ -302,8 +418,9 @@ public final class Panorama {
             requireNonBuild();
 
             build = true;
-            Panorama p = new Panorama(parameters, distance, longitude, latitude,
-                    elevation, slope);
+            Panorama p = new Panorama(parameters, FloatBuffer.wrap(distance),
+                    FloatBuffer.wrap(longitude), FloatBuffer.wrap(latitude),
+                    FloatBuffer.wrap(elevation), FloatBuffer.wrap(slope));
             distance = null;
             longitude = null;
             elevation = null;
@@ -0,0 +1,144 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A cache of computed panoramas, keyed on their parameters. The memory taken
+ * on the heap by the samples of the cached panoramas is bounded, the least
+ * recently used ones being evicted first when a new one does not fit; the
+ * panoramas read from a file view its mapping and take no heap.
+ * <p>
+ * As the key is only the parameters, a cache must only hold the panoramas of
+ * computers configured alike: computers using another refinement of the roots
+ * or no elevation pyramid compute slightly different panoramas, and must each
+ * have their own cache.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see PanoramaParameters#equals(Object)
+ */
+public final class PanoramaCache {
+
+    private final long maxBytes;
+    // in access order, the least recently used first
+    private final LinkedHashMap<PanoramaParameters, Panorama> panoramas;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    /**
+     * Construct an empty cache
+     *
+     * @param maxBytes
+     *            the maximum number of bytes taken on the heap by the samples
+     *            of the cached panoramas
+     * @throws IllegalArgumentException
+     *             if maxBytes is not positive
+     */
+    public PanoramaCache(long maxBytes) {
+        checkArgument(maxBytes > 0);
+        this.maxBytes = maxBytes;
+        this.panoramas = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * Gives the cached panorama of some parameters
+     *
+     * @param parameters
+     *            the parameters
+     * @return the panorama, <code>null</code> if it is not cached
+     * @throws NullPointerException
+     *             if the parameters are <code>null</code>
+     */
+    public synchronized Panorama get(PanoramaParameters parameters) {
+        Panorama p = panoramas.get(requireNonNull(parameters));
+        if (p == null) {
+            ++misses;
+        } else {
+            ++hits;
+        }
+        return p;
+    }
+
+    /**
+     * Cache a panorama, evicting the least recently used ones if needed. A
+     * panorama larger than the cache is not cached.
+     *
+     * @param panorama
+     *            the panorama
+     * @throws NullPointerException
+     *             if the panorama is <code>null</code>
+     */
+    public synchronized void put(Panorama panorama) {
+        long size = panorama.sizeInBytes();
+        if (size > maxBytes) {
+            return;
+        }
+
+        Panorama previous = panoramas.remove(panorama.parameters());
+        if (previous != null) {
+            usedBytes -= previous.sizeInBytes();
+        }
+
+        Iterator<Map.Entry<PanoramaParameters, Panorama>> it = panoramas
+                .entrySet().iterator();
+        while (usedBytes + size > maxBytes) {
+            usedBytes -= it.next().getValue().sizeInBytes();
+            it.remove();
+        }
+
+        panoramas.put(panorama.parameters(), panorama);
+        usedBytes += size;
+    }
+
+    /**
+     * Empty the cache, keeping its counts of hits and misses
+     */
+    public synchronized void clear() {
+        panoramas.clear();
+        usedBytes = 0;
+    }
+
+    /**
+     * Number of cached panoramas
+     *
+     * @return the number of panoramas
+     */
+    public synchronized int size() {
+        return panoramas.size();
+    }
+
+    /**
+     * Number of bytes taken on the heap by the samples of the cached
+     * panoramas
+     *
+     * @return the number of bytes
+     */
+    public synchronized long usedBytes() {
+        return usedBytes;
+    }
+
+    /**
+     * Number of calls to get which found their panorama
+     *
+     * @return the number of hits
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Number of calls to get which did not find their panorama
+     *
+     * @return the number of misses
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+}
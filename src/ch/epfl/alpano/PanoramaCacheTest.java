@@ -0,0 +1,94 @@
+package ch.epfl.alpano;
+
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.junit.Test;
+
+public class PanoramaCacheTest {
+    // the samples of a 10x10 panorama take 2000 bytes
+    private static final long BYTES_10X10 = 5 * 10 * 10 * 4;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroBytes() {
+        new PanoramaCache(0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void getFailsWithNullParameters() {
+        new PanoramaCache(1).get(null);
+    }
+
+    @Test
+    public void getFindsPanoramaOfEqualParameters() {
+        PanoramaCache c = new PanoramaCache(BYTES_10X10);
+        Panorama p = panorama(1000);
+        c.put(p);
+        assertSame(p, c.get(parameters(1000)));
+        assertNull(c.get(parameters(1001)));
+        assertEquals(1, c.hits());
+        assertEquals(1, c.misses());
+        assertEquals(BYTES_10X10, c.usedBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedPanoramaIsEvicted() {
+        PanoramaCache c = new PanoramaCache(2 * BYTES_10X10);
+        Panorama p1 = panorama(1), p2 = panorama(2), p3 = panorama(3);
+        c.put(p1);
+        c.put(p2);
+        c.get(p1.parameters());
+        c.put(p3);
+        assertEquals(2, c.size());
+        assertSame(p1, c.get(p1.parameters()));
+        assertNull(c.get(p2.parameters()));
+        assertSame(p3, c.get(p3.parameters()));
+        assertEquals(2 * BYTES_10X10, c.usedBytes());
+    }
+
+    @Test
+    public void panoramaLargerThanTheCacheIsNotCached() {
+        PanoramaCache c = new PanoramaCache(BYTES_10X10 - 1);
+        c.put(panorama(1));
+        assertEquals(0, c.size());
+        assertEquals(0, c.usedBytes());
+    }
+
+    @Test
+    public void puttingTheSameParametersTwiceReplacesThePanorama() {
+        PanoramaCache c = new PanoramaCache(2 * BYTES_10X10);
+        Panorama p = panorama(1);
+        c.put(panorama(1));
+        c.put(p);
+        assertEquals(1, c.size());
+        assertEquals(BYTES_10X10, c.usedBytes());
+        assertSame(p, c.get(parameters(1)));
+    }
+
+    @Test
+    public void mappedPanoramaTakesNoHeap() throws IOException {
+        PanoramaCache c = new PanoramaCache(BYTES_10X10);
+        File f = File.createTempFile("panorama", ".bin");
+        f.deleteOnExit();
+        PanoramaFile.write(panorama(1), f);
+        Panorama mapped = PanoramaFile.read(f);
+        c.put(panorama(2));
+        c.put(mapped);
+        assertEquals(2, c.size());
+        assertEquals(BYTES_10X10, c.usedBytes());
+        assertSame(mapped, c.get(parameters(1)));
+    }
+
+    private static PanoramaParameters parameters(int elevation) {
+        return new PanoramaParameters(new GeoPoint(toRadians(7), toRadians(46)), elevation, 0, toRadians(60), 10_000, 10, 10);
+    }
+
+    private static Panorama panorama(int elevation) {
+        return new Panorama.Builder(parameters(elevation)).build();
+    }
+}
@@ -1,14 +1,24 @@
 package ch.epfl.alpano;
 
+import ch.epfl.alpano.PipelineMetrics.Counter;
+import ch.epfl.alpano.PipelineMetrics.Stage;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
-import static ch.epfl.alpano.Distance.EARTH_RADIUS;
-import static ch.epfl.alpano.Math2.*;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
 
+import static ch.epfl.alpano.Preconditions.checkArgument;
 import static java.util.Objects.requireNonNull;
 import static java.lang.Math.*;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import java.util.function.DoubleUnaryOperator;
+import java.util.stream.IntStream;
 
 /**
  * Class that computes a panorama
@@ -19,12 +29,18 @@ import java.util.function.DoubleUnaryOperator;
  */
 public final class PanoramaComputer {
 
-    private static final double REFRACTION_CONSTANT = 0.13;
-    private static final double D = (1.0 - REFRACTION_CONSTANT)
-            / (2 * EARTH_RADIUS);
     private static final int SMALL_INTERVAL = 4;
     private static final int INTERVAL = 64;
+    // largest difference between the azimuths of two columns considered the
+    // same, absorbing the rounding errors of their computation
+    private static final double AZIMUTH_TOLERANCE = 1e-12;
+    // margin absorbing the rounding of the distances stored as floats
+    private static final double DISTANCE_MARGIN = 1;
+    private static final Monitor NO_MONITOR = () -> false;
     private final ContinuousElevationModel dem;
+    private final MaxElevationPyramid pyramid;
+    private final PipelineMetrics metrics;
+    private final RootRefinement rootRefinement;
 
     /**
      * Create a panorama computer from a continuous dem
@@ -35,7 +51,67 @@ public final class PanoramaComputer {
      *             if the dem is null
      */
     public PanoramaComputer(ContinuousElevationModel dem) {
-        this.dem = requireNonNull(dem);
+        this(requireNonNull(dem), null, null, RootRefinement.BISECTION);
+    }
+
+    private PanoramaComputer(ContinuousElevationModel dem,
+            MaxElevationPyramid pyramid, PipelineMetrics metrics,
+            RootRefinement rootRefinement) {
+        this.dem = dem;
+        this.pyramid = pyramid;
+        this.metrics = metrics;
+        this.rootRefinement = rootRefinement;
+    }
+
+    /**
+     * Give a panorama computer that skips the parts of the rays proved to be
+     * above the ground by a pyramid of the maximum elevations, computing the
+     * same panoramas with fewer elevation lookups
+     * 
+     * @param pyramid
+     *            the pyramid of the maximum elevations of the discrete DEM
+     *            from which the continuous dem was built
+     * @return a panorama computer using the pyramid
+     * @throws NullPointerException
+     *             if the pyramid is null
+     */
+    public PanoramaComputer withElevationPyramid(MaxElevationPyramid pyramid) {
+        return new PanoramaComputer(dem, requireNonNull(pyramid), metrics,
+                rootRefinement);
+    }
+
+    /**
+     * Give a panorama computer recording the time spent searching the rays,
+     * bisecting them and reading the ground, and counting the elevations
+     * read, the steps of the searches, the bisections and the columns
+     * terminated at infinity. It computes the same panoramas.
+     * 
+     * @param metrics
+     *            the recorder, shared with the computations in progress
+     * @return a panorama computer recording in the recorder
+     * @throws NullPointerException
+     *             if the recorder is null
+     */
+    public PanoramaComputer withMetrics(PipelineMetrics metrics) {
+        return new PanoramaComputer(dem, pyramid, requireNonNull(metrics),
+                rootRefinement);
+    }
+
+    /**
+     * Give a panorama computer improving the intervals in which the rays hit
+     * the ground with the given method, binary search by default. The
+     * distances of the panoramas are given up to the same precision with all
+     * methods, but their samples may differ by less than this precision.
+     * 
+     * @param rootRefinement
+     *            the method
+     * @return a panorama computer using the method
+     * @throws NullPointerException
+     *             if the method is null
+     */
+    public PanoramaComputer withRootRefinement(RootRefinement rootRefinement) {
+        return new PanoramaComputer(dem, pyramid, metrics,
+                requireNonNull(rootRefinement));
     }
 
     /**
@@ -46,61 +122,572 @@ public final class PanoramaComputer {
      * @return the panorama
      */
     public Panorama computePanorama(PanoramaParameters parameters) {
+        return computePanorama(parameters, false);
+    }
 
+    /**
+     * Function that computes the panorama, possibly splitting its columns
+     * across the threads of the common fork-join pool
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param parallel
+     *            <code>true</code> to compute the columns in parallel
+     * @return the panorama, identical to the one computed sequentially
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            boolean parallel) {
+        return computePanorama(parameters, parallel, NO_MONITOR);
+    }
+
+    /**
+     * Function that computes the panorama under the supervision of a monitor,
+     * which is told of each computed column and may cancel the computation
+     * between two columns
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param parallel
+     *            <code>true</code> to compute the columns in parallel
+     * @param monitor
+     *            the monitor of the computation
+     * @return the panorama, identical to the one computed sequentially
+     * @throws CancellationException
+     *             if the monitor cancelled the computation
+     * @throws NullPointerException
+     *             if the monitor is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            boolean parallel, Monitor monitor) {
+        requireNonNull(monitor);
+        return parallel
+                ? inPool(ForkJoinPool.commonPool(),
+                        () -> computeColumns(parameters, true, monitor))
+                : computeColumns(parameters, false, monitor);
+    }
+
+    /**
+     * Function that computes the panorama, splitting its columns across the
+     * threads of the given pool
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param pool
+     *            the pool in which the columns are computed
+     * @return the panorama, identical to the one computed sequentially
+     * @throws NullPointerException
+     *             if the pool is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            ForkJoinPool pool) {
+        return inPool(requireNonNull(pool),
+                () -> computeColumns(parameters, true, NO_MONITOR));
+    }
+
+    /**
+     * Function that computes the panorama, reusing the columns of a previous
+     * panorama sampled like its own: same observer, height and angle per
+     * pixel, and azimuth equal up to rounding errors. A column is only reused
+     * if the new maximum distance cannot change it: when it is larger, all
+     * the rays of the column must have hit the ground, and when it is
+     * smaller, they must have hit it closer than the new maximum distance.
+     * Only the other columns are computed.
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param previous
+     *            the previous panorama, or <code>null</code>
+     * @param parallel
+     *            <code>true</code> to compute the columns in parallel
+     * @param monitor
+     *            the monitor of the computation, told of the computed
+     *            columns only
+     * @return the panorama, identical to the one computed without the previous
+     *         one up to the rounding of the azimuths of the reused columns
+     * @throws CancellationException
+     *             if the monitor cancelled the computation
+     * @throws NullPointerException
+     *             if the monitor is null
+     */
+    public Panorama computePanorama(PanoramaParameters parameters,
+            Panorama previous, boolean parallel, Monitor monitor) {
+        requireNonNull(monitor);
+        if (previous == null) {
+            return computePanorama(parameters, parallel, monitor);
+        }
+
+        int[] reusedColumns = reusedColumns(parameters, previous);
         Panorama.Builder panoBuilder = new Panorama.Builder(parameters);
 
-        // iteration on all samples
-        for (int x = 0; x <= parameters.width() - 1; ++x) {
+        int[] computedColumns = IntStream.range(0, parameters.width())
+                .filter(x -> reusedColumns[x] < 0).toArray();
+        for (int x = 0; x < parameters.width(); ++x) {
+            if (reusedColumns[x] >= 0) {
+                copyColumn(previous, reusedColumns[x], panoBuilder, x);
+            }
+        }
+
+        Runnable computation = () -> computeColumns(parameters,
+                computedColumns, panoBuilder, parallel, monitor);
+        if (parallel) {
+            ForkJoinPool.commonPool().submit(computation).join();
+        } else {
+            computation.run();
+        }
+
+        return panoBuilder.build();
+    }
+
+    /**
+     * Function that computes the panorama by vertical strips of columns, giving
+     * each strip to the consumer as soon as it is computed, so that only one
+     * strip is held in memory at a time, unless the consumer keeps them.
+     * {@link PanoramaFile#writeByStrips} gives the strips to a consumer
+     * writing them into a file.
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param stripWidth
+     *            the number of columns of a strip, the last strip being
+     *            narrower or one column wider
+     * @param parallel
+     *            <code>true</code> to compute the columns of a strip in
+     *            parallel
+     * @param consumer
+     *            the consumer of the strips, called in the order of the strips
+     * @throws IOException
+     *             if the consumer fails to handle a strip
+     * @throws IllegalArgumentException
+     *             if the strip width is smaller than 2
+     * @throws NullPointerException
+     *             if the consumer is null
+     */
+    public void computePanoramaByStrips(PanoramaParameters parameters,
+            int stripWidth, boolean parallel, StripConsumer consumer)
+            throws IOException {
+        checkArgument(stripWidth >= 2);
+        requireNonNull(consumer);
 
-            ElevationProfile profile = new ElevationProfile(dem,
-                    parameters.observerPosition(), parameters.azimuthForX(x),
-                    parameters.maxDistance());
+        int width = parameters.width();
+        int fromX = 0;
 
-            double lastAbcissa = 0;
-            boolean notInfinity = true;
+        while (fromX < width) {
+            int columns = min(stripWidth, width - fromX);
+            // a strip must have two columns to have a field of view
+            if (width - fromX - columns == 1) {
+                ++columns;
+            }
 
-            for (int y = parameters.height() - 1; y >= 0 && notInfinity; y--) {
+            Panorama.Builder stripBuilder = new Panorama.Builder(
+                    parameters.strip(fromX, columns));
+            computeColumns(parameters, fromX, columns, stripBuilder, parallel,
+                    NO_MONITOR);
+            consumer.accept(fromX, stripBuilder.build());
 
-                double altitudeForY = parameters.altitudeForY(y);
-                // The function
-                DoubleUnaryOperator function = rayToGroundDistance(profile,
-                        parameters.observerElevation(), tan(altitudeForY));
+            fromX += columns;
+        }
+    }
 
-                // first approximation
-                double abscissa = firstIntervalContainingRoot(function,
-                        lastAbcissa, parameters.maxDistance(), INTERVAL);
+    /**
+     * Consumer of the strips of a panorama computed by strips
+     * 
+     * @author Mathieu Chevalley (274698)
+     * @author Louis Amaudruz (271808)
+     * @see PanoramaComputer#computePanoramaByStrips
+     */
+    @FunctionalInterface
+    public interface StripConsumer {
 
-                // only if the abscissa is finite
-                if (abscissa == Double.POSITIVE_INFINITY) {
-                    notInfinity = false;
-                } else {
-                    // improvement of the first approximation
-                    abscissa = improveRoot(function, abscissa,
-                            abscissa + INTERVAL, SMALL_INTERVAL);
+        /**
+         * Handle a computed strip
+         * 
+         * @param fromX
+         *            the index in the panorama of the first column of the strip
+         * @param strip
+         *            the strip, whose parameters are those of its columns
+         * @throws IOException
+         *             if the strip could not be handled
+         */
+        void accept(int fromX, Panorama strip) throws IOException;
+    }
 
-                    // distance from observer to the point, using the angle
-                    // between the function and the axe
-                    double distance = abscissa / cos(altitudeForY);
+    /**
+     * Function that computes the panorama progressively: a coarse panorama is
+     * first computed from every coarsestStep-th column, each column filling
+     * the ones up to the next, then the step is halved at each stage until
+     * the panorama is computed at full resolution. Each stage only computes
+     * the columns the previous ones did not, so that all the stages together
+     * compute each column once.
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param coarsestStep
+     *            the step between the columns of the first stage
+     * @param parallel
+     *            <code>true</code> to compute the columns in parallel
+     * @param stages
+     *            the consumer to which every stage is given, ending with the
+     *            full resolution panorama
+     * @return the full resolution panorama, identical to the one computed by
+     *         {@link #computePanorama(PanoramaParameters)}
+     * @throws IllegalArgumentException
+     *             if the coarsest step is smaller than 1
+     * @throws NullPointerException
+     *             if the consumer is null
+     */
+    public Panorama computePanoramaProgressively(PanoramaParameters parameters,
+            int coarsestStep, boolean parallel, Consumer<Panorama> stages) {
+        return computePanoramaProgressively(parameters, null, coarsestStep,
+                parallel, NO_MONITOR, stages);
+    }
 
-                    // set all found datum
-                    GeoPoint position = profile.positionAt(abscissa);
-                    panoBuilder.setDistanceAt(x, y, (float) distance)
-                            .setElevationAt(x, y,
-                                    (float) dem.elevationAt(position))
-                            .setLatitudeAt(x, y, (float) position.latitude())
-                            .setLongitudeAt(x, y, (float) position.longitude())
-                            .setSlopeAt(x, y, (float) dem.slopeAt(position));
+    /**
+     * Function that computes the panorama progressively under the supervision
+     * of a monitor, reusing the columns of a previous panorama as
+     * {@link #computePanorama(PanoramaParameters, Panorama, boolean, Monitor)}
+     * does: the reused columns are part of every stage, and the other columns
+     * are computed by stages of halving steps, each reused or computed column
+     * filling the ones up to the next reused or computed one. The coarse
+     * stages are skipped once all the columns are reused or computed.
+     * 
+     * @param parameters
+     *            the parameters of the panorama
+     * @param previous
+     *            the previous panorama, or <code>null</code>
+     * @param coarsestStep
+     *            the step between the columns of the first stage
+     * @param parallel
+     *            <code>true</code> to compute the columns in parallel
+     * @param monitor
+     *            the monitor of the computation, told of the computed
+     *            columns of all the stages
+     * @param stages
+     *            the consumer to which every stage is given, ending with the
+     *            full resolution panorama
+     * @return the full resolution panorama, identical to the one computed
+     *         without stages
+     * @throws CancellationException
+     *             if the monitor cancelled the computation
+     * @throws IllegalArgumentException
+     *             if the coarsest step is smaller than 1
+     * @throws NullPointerException
+     *             if the monitor or the consumer is null
+     */
+    public Panorama computePanoramaProgressively(PanoramaParameters parameters,
+            Panorama previous, int coarsestStep, boolean parallel,
+            Monitor monitor, Consumer<Panorama> stages) {
+        checkArgument(coarsestStep >= 1);
+        requireNonNull(monitor);
+        requireNonNull(stages);
 
+        int width = parameters.width();
+        Panorama.Builder panoBuilder = new Panorama.Builder(parameters);
+        // the columns whose samples are set, reused or computed
+        boolean[] done = new boolean[width];
+        if (previous != null) {
+            int[] reusedColumns = reusedColumns(parameters, previous);
+            for (int x = 0; x < width; ++x) {
+                if (reusedColumns[x] >= 0) {
+                    copyColumn(previous, reusedColumns[x], panoBuilder, x);
+                    done[x] = true;
                 }
+            }
+        }
+
+        int total = (int) IntStream.range(0, width).filter(x -> !done[x])
+                .count();
+        AtomicInteger computed = new AtomicInteger();
 
-                lastAbcissa = abscissa;
+        for (int step = coarsestStep; step >= 1; step /= 2) {
+            int s = step;
+            int[] columns = IntStream.range(0, (width + step - 1) / step)
+                    .map(i -> i * s).filter(x -> !done[x]).toArray();
 
+            Runnable computation = () -> computeColumns(parameters, columns,
+                    panoBuilder, parallel, monitor, computed, total);
+            if (parallel) {
+                ForkJoinPool.commonPool().submit(computation).join();
+            } else {
+                computation.run();
+            }
+            for (int x : columns) {
+                done[x] = true;
+            }
+
+            if (step > 1 && computed.get() < total) {
+                // the columns not computed yet show the nearest reused or
+                // computed one on their left, in a copy so that they are
+                // computed from scratch
+                int[] sourceColumns = new int[width];
+                for (int x = 0, source = 0; x < width; ++x) {
+                    if (done[x]) {
+                        source = x;
+                    }
+                    sourceColumns[x] = source;
+                }
+                stages.accept(panoBuilder.withColumns(sourceColumns).build());
             }
         }
 
+        Panorama panorama = panoBuilder.build();
+        stages.accept(panorama);
+        return panorama;
+    }
+
+    /**
+     * Monitor of a panorama computation
+     * 
+     * @author Mathieu Chevalley (274698)
+     * @author Louis Amaudruz (271808)
+     * @see PanoramaComputer#computePanorama(PanoramaParameters, boolean,
+     *      Monitor)
+     */
+    public interface Monitor {
+
+        /**
+         * Tell if the computation must stop, checked before each column
+         * 
+         * @return <code>true</code> if the computation is cancelled
+         */
+        boolean isCancelled();
+
+        /**
+         * Called after each computed column, possibly from several threads
+         * 
+         * @param computedColumns
+         *            the number of columns computed so far
+         * @param totalColumns
+         *            the number of columns of the panorama
+         */
+        default void columnComputed(int computedColumns, int totalColumns) {
+        }
+    }
+
+    // run a computation in the pool, where its parallel streams then run
+    private static Panorama inPool(ForkJoinPool pool,
+            Callable<Panorama> computation) {
+        return pool.submit(computation).join();
+    }
+
+    // compute all the columns of the panorama, each column only writes its
+    // own samples
+    private Panorama computeColumns(PanoramaParameters parameters,
+            boolean parallel, Monitor monitor) {
+
+        Panorama.Builder panoBuilder = new Panorama.Builder(parameters);
+        computeColumns(parameters, 0, parameters.width(), panoBuilder,
+                parallel, monitor);
+
         return panoBuilder.build();
     }
 
+    // compute the given columns of the panorama, stored from the first column
+    // of the builder
+    private void computeColumns(PanoramaParameters parameters, int fromX,
+            int count, Panorama.Builder panoBuilder, boolean parallel,
+            Monitor monitor) {
+
+        AtomicInteger computed = new AtomicInteger();
+
+        IntStream columns = IntStream.range(0, count);
+        if (parallel) {
+            columns = columns.parallel();
+        }
+        columns.forEach(i -> {
+            if (monitor.isCancelled()) {
+                throw new CancellationException();
+            }
+            computeColumn(parameters, fromX + i, panoBuilder, i);
+            monitor.columnComputed(computed.incrementAndGet(), count);
+        });
+    }
+
+    // compute the given columns of the panorama
+    private void computeColumns(PanoramaParameters parameters, int[] columns,
+            Panorama.Builder panoBuilder, boolean parallel, Monitor monitor) {
+        computeColumns(parameters, columns, panoBuilder, parallel, monitor,
+                new AtomicInteger(), columns.length);
+    }
+
+    // compute the given columns of the panorama, counted in the columns
+    // computed among the total told to the monitor
+    private void computeColumns(PanoramaParameters parameters, int[] columns,
+            Panorama.Builder panoBuilder, boolean parallel, Monitor monitor,
+            AtomicInteger computed, int total) {
+
+        IntStream stream = IntStream.of(columns);
+        if (parallel) {
+            stream = stream.parallel();
+        }
+        stream.forEach(x -> {
+            if (monitor.isCancelled()) {
+                throw new CancellationException();
+            }
+            computeColumn(parameters, x, panoBuilder, x);
+            monitor.columnComputed(computed.incrementAndGet(), total);
+        });
+    }
+
+    // for each column of the panorama, the column of the previous one it is
+    // identical to, -1 if there is none
+    private static int[] reusedColumns(PanoramaParameters parameters,
+            Panorama previous) {
+        PanoramaParameters p = previous.parameters();
+        int[] reused = new int[parameters.width()];
+        Arrays.fill(reused, -1);
+
+        if (p.observerPosition().longitude() != parameters.observerPosition()
+                .longitude()
+                || p.observerPosition().latitude() != parameters
+                        .observerPosition().latitude()
+                || p.observerElevation() != parameters.observerElevation()
+                || p.height() != parameters.height()
+                || p.anglePerPixels() != parameters.anglePerPixels()) {
+            return reused;
+        }
+
+        for (int x = 0; x < parameters.width(); ++x) {
+            double azimuth = parameters.azimuthForX(x);
+            double previousX = rint(
+                    Math2.angularDistance(p.centerAzimuth(), azimuth)
+                            / p.anglePerPixels() + (p.width() - 1) / 2d);
+
+            if (previousX >= 0 && previousX <= p.width() - 1
+                    && abs(Math2.angularDistance(p.azimuthForX(previousX),
+                            azimuth)) <= AZIMUTH_TOLERANCE
+                    && isValidUpTo(previous, (int) previousX,
+                            parameters.maxDistance())) {
+                reused[x] = (int) previousX;
+            }
+        }
+        return reused;
+    }
+
+    // check if the column x of a panorama would be the same if computed up to
+    // another maximum distance
+    private static boolean isValidUpTo(Panorama panorama, int x,
+            int maxDistance) {
+        PanoramaParameters p = panorama.parameters();
+
+        // from the lowest ray, like the computation of the column
+        for (int y = p.height() - 1; y >= 0; --y) {
+            float distance = panorama.distanceAt(x, y);
+            if (distance == Float.POSITIVE_INFINITY) {
+                // no ray above this one hit the ground, and a farther
+                // maximum distance could change that
+                return maxDistance <= p.maxDistance();
+            }
+            // the root was found in the interval starting before the
+            // abscissa, which must still be searched
+            double abscissa = distance * cos(p.altitudeForY(y));
+            if (abscissa + INTERVAL + DISTANCE_MARGIN > maxDistance
+                    && maxDistance < p.maxDistance()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // copy the column fromX of a panorama to the column toX of a builder
+    private static void copyColumn(Panorama panorama, int fromX,
+            Panorama.Builder panoBuilder, int toX) {
+        for (int y = 0; y < panorama.parameters().height(); ++y) {
+            panoBuilder.setDistanceAt(toX, y, panorama.distanceAt(fromX, y))
+                    .setElevationAt(toX, y, panorama.elevationAt(fromX, y))
+                    .setLatitudeAt(toX, y, panorama.latitudeAt(fromX, y))
+                    .setLongitudeAt(toX, y, panorama.longitudeAt(fromX, y))
+                    .setSlopeAt(toX, y, panorama.slopeAt(fromX, y));
+        }
+    }
+
+    // compute the column x, stored in the column builderX
+    private void computeColumn(PanoramaParameters parameters, int x,
+            Panorama.Builder panoBuilder, int builderX) {
+
+        ElevationProfile profile = new ElevationProfile(dem,
+                parameters.observerPosition(), parameters.azimuthForX(x),
+                parameters.maxDistance());
+
+        RayKernel kernel = new RayKernel(profile,
+                parameters.observerElevation(), pyramid);
+
+        double lastAbcissa = 0;
+        boolean notInfinity = true;
+
+        // the time of each stage, only measured if it is recorded
+        boolean recorded = metrics != null;
+        long searchNanos = 0, bisectionNanos = 0, slopeNanos = 0;
+        int hits = 0;
+
+        for (int y = parameters.height() - 1; y >= 0 && notInfinity; --y) {
+
+            double altitudeForY = parameters.altitudeForY(y);
+            double raySlope = tan(altitudeForY);
+
+            // first approximation
+            long start = recorded ? System.nanoTime() : 0;
+            double abscissa = kernel.firstIntervalContainingRoot(raySlope,
+                    lastAbcissa, parameters.maxDistance(), INTERVAL);
+            if (recorded) {
+                long searched = System.nanoTime();
+                searchNanos += searched - start;
+                start = searched;
+            }
+
+            // only if the abscissa is finite
+            if (abscissa == Double.POSITIVE_INFINITY) {
+                notInfinity = false;
+            } else {
+                // improvement of the first approximation
+                abscissa = rootRefinement == RootRefinement.ILLINOIS
+                        ? kernel.improveRootIllinois(SMALL_INTERVAL)
+                        : kernel.improveRoot(SMALL_INTERVAL);
+                if (recorded) {
+                    long bisected = System.nanoTime();
+                    bisectionNanos += bisected - start;
+                    start = bisected;
+                }
+
+                // distance from observer to the point, using the angle
+                // between the function and the axe
+                float distance = (float) (abscissa / cos(altitudeForY));
+
+                // set all found datum
+                double longitude = profile.longitudeAt(abscissa);
+                double latitude = profile.latitudeAt(abscissa);
+                float elevation = (float) dem.elevationAt(longitude, latitude);
+                float slope = (float) dem.slopeAt(longitude, latitude);
+                if (recorded) {
+                    slopeNanos += System.nanoTime() - start;
+                    ++hits;
+                }
+
+                panoBuilder.setDistanceAt(builderX, y, distance)
+                        .setElevationAt(builderX, y, elevation)
+                        .setLatitudeAt(builderX, y, (float) latitude)
+                        .setLongitudeAt(builderX, y, (float) longitude)
+                        .setSlopeAt(builderX, y, slope);
+            }
+
+            lastAbcissa = abscissa;
+
+        }
+
+        if (recorded) {
+            metrics.addNanos(Stage.RAY_SEARCH, searchNanos);
+            metrics.addNanos(Stage.BISECTION, bisectionNanos);
+            metrics.addNanos(Stage.SLOPE, slopeNanos);
+            // the elevation of each hit is read once more with its slope
+            metrics.add(Counter.ELEVATION_SAMPLES,
+                    kernel.evaluations() + hits);
+            metrics.add(Counter.ROOT_SEARCH_STEPS, kernel.searchSteps());
+            metrics.add(Counter.BISECTION_ITERATIONS, kernel.bisections());
+            if (!notInfinity) {
+                metrics.add(Counter.COLUMNS_TERMINATED_AT_INFINITY, 1);
+            }
+        }
+    }
+
     /**
      * Give a function computing the distance between a ray and the ground
      * 
@@ -116,7 +703,8 @@ public final class PanoramaComputer {
      */
     public static DoubleUnaryOperator rayToGroundDistance(
             ElevationProfile profile, double ray0, double raySlope) {
-        return x -> ray0 + x * raySlope - profile.elevationAt(x) + sq(x) * D;
+        requireNonNull(profile);
+        return x -> RayKernel.rayToGround(profile, ray0, raySlope, x);
 
     }
 }
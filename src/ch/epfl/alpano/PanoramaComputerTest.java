@@ -6,8 +6,15 @@ import static java.lang.Math.cos;
 import static java.lang.Math.sin;
 import static java.lang.Math.toRadians;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.DoubleUnaryOperator;
 
 import org.junit.Test;
@@ -15,6 +22,7 @@ import org.junit.Test;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
 
 public class PanoramaComputerTest {
     @Test(expected = NullPointerException.class)
@@ -63,6 +71,299 @@ public class PanoramaComputerTest {
         }
     }
 
+    @Test
+    public void parallelComputePanoramaIsIdenticalToSequential() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama s = pc.computePanorama(pp);
+        Panorama p = pc.computePanorama(pp, true);
+        ForkJoinPool pool = new ForkJoinPool(3);
+        Panorama q;
+        try {
+            q = pc.computePanorama(pp, pool);
+        } finally {
+            pool.shutdown();
+        }
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertSameSample(s, p, x, y);
+                assertSameSample(s, q, x, y);
+            }
+        }
+    }
+
+    @Test
+    public void panoramaComputedByStripsIsIdenticalToWholePanorama() throws IOException {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama s = pc.computePanorama(pp);
+        int[] columns = new int[1];
+        pc.computePanoramaByStrips(pp, 7, true, (fromX, strip) -> {
+            assertEquals(columns[0], fromX);
+            assertEquals(h, strip.parameters().height());
+            for (int x = 0; x < strip.parameters().width(); ++x)
+                for (int y = 0; y < h; ++y)
+                    assertSameSample(s, fromX + x, strip, x, y);
+            columns[0] += strip.parameters().width();
+        });
+        assertEquals(w, columns[0]);
+    }
+
+    @Test
+    public void progressiveStagesEndWithTheFullPanorama() {
+        int w = 50, h = 20;
+        GeoPoint o = new GeoPoint(0,0);
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama s = pc.computePanorama(pp);
+        List<Panorama> stages = new ArrayList<>();
+        Panorama p = pc.computePanoramaProgressively(pp, 4, false, stages::add);
+        assertEquals(3, stages.size());
+        assertSame(p, stages.get(2));
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertSameSample(s, p, x, y);
+                // the computed columns are exact, and fill the ones up to
+                // the next
+                assertSameSample(s, x / 4 * 4, stages.get(0), x, y);
+                assertSameSample(s, x / 2 * 2, stages.get(1), x, y);
+            }
+        }
+    }
+
+    @Test
+    public void progressiveStagesComputeEachColumnOnce() {
+        int w = 50, h = 20;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        AtomicInteger computed = new AtomicInteger();
+        List<Panorama> stages = new ArrayList<>();
+        new PanoramaComputer(wavyContDEM()).computePanoramaProgressively(pp, null, 8, true, columnCounter(computed), stages::add);
+        assertEquals(4, stages.size());
+        assertEquals(w, computed.get());
+    }
+
+    @Test
+    public void progressiveStagesReuseTheColumnsOfThePreviousPanorama() {
+        int w = 51, h = 20;
+        GeoPoint o = new GeoPoint(toRadians(1), toRadians(1));
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama previous = pc.computePanorama(new PanoramaParameters(o, 2000, toRadians(45), toRadians(50), 100_000, w, h));
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(50), toRadians(50), 100_000, w, h);
+        AtomicInteger computed = new AtomicInteger();
+        List<Panorama> stages = new ArrayList<>();
+        Panorama p = pc.computePanoramaProgressively(pp, previous, 4, false, columnCounter(computed), stages::add);
+        assertEquals(5, computed.get());
+        Panorama s = pc.computePanorama(pp);
+        for (int x = 0; x < w; ++x)
+            for (int y = 0; y < h; ++y) {
+                assertSameSample(s, p, x, y);
+                // the reused columns are in every stage, and the others show
+                // the nearest reused or computed one on their left
+                if (x < w - 5)
+                    assertSameSample(s, x, stages.get(0), x, y);
+                else
+                    assertSameSample(s, x < 48 ? w - 6 : 48, stages.get(0), x, y);
+            }
+    }
+
+    @Test
+    public void monitorIsToldOfEveryColumn() {
+        int w = 50, h = 20;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        AtomicInteger calls = new AtomicInteger();
+        new PanoramaComputer(wavyContDEM()).computePanorama(pp, true, new PanoramaComputer.Monitor() {
+            @Override
+            public boolean isCancelled() { return false; }
+
+            @Override
+            public void columnComputed(int computedColumns, int totalColumns) {
+                assertEquals(w, totalColumns);
+                calls.incrementAndGet();
+            }
+        });
+        assertEquals(w, calls.get());
+    }
+
+    @Test(expected = CancellationException.class)
+    public void cancelledComputationFails() {
+        int w = 50, h = 20;
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0,0), 2000, toRadians(45), toRadians(h), 300_000, w, h);
+        new PanoramaComputer(wavyContDEM()).computePanorama(pp, false, () -> true);
+    }
+
+    @Test
+    public void elevationPyramidDoesNotChangeThePanorama() {
+        int w = 60, h = 40;
+        Interval2D extent = new Interval2D(new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3));
+        WavyDEM dDEM = new WavyDEM(extent);
+        PanoramaComputer pc = new PanoramaComputer(new ContinuousElevationModel(dDEM));
+        PanoramaComputer pyramidPC = pc.withElevationPyramid(new MaxElevationPyramid(dDEM));
+        GeoPoint o = new GeoPoint(toRadians(1.5), toRadians(1.5));
+        PanoramaParameters pp = new PanoramaParameters(o, 1200, toRadians(45), toRadians(80), 150_000, w, h);
+        Panorama p = pc.computePanorama(pp);
+        Panorama s = pyramidPC.computePanorama(pp);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertSameSample(p, s, x, y);
+            }
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void withElevationPyramidFailsWithNullPyramid() {
+        new PanoramaComputer(zeroContDEM()).withElevationPyramid(null);
+    }
+
+    @Test
+    public void metricsDoNotChangeThePanoramaAndCountItsWork() {
+        int w = 30, h = 20;
+        GeoPoint o = new GeoPoint(toRadians(1), toRadians(1));
+        PanoramaParameters pp = new PanoramaParameters(o, 1200, toRadians(45), toRadians(60), 50_000, w, h);
+        PipelineMetrics metrics = new PipelineMetrics();
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama expected = pc.computePanorama(pp);
+        Panorama actual = pc.withMetrics(metrics).computePanorama(pp, true);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                assertSameSample(expected, actual, x, y);
+            }
+        }
+
+        PipelineMetrics.Snapshot s = metrics.snapshot();
+        // the highest rays of every column see the sky
+        assertEquals(w, s.count(PipelineMetrics.Counter.COLUMNS_TERMINATED_AT_INFINITY));
+        assertTrue(s.count(PipelineMetrics.Counter.ROOT_SEARCH_STEPS) > 0);
+        assertTrue(s.count(PipelineMetrics.Counter.BISECTION_ITERATIONS) > 0);
+        assertTrue(s.count(PipelineMetrics.Counter.ELEVATION_SAMPLES) > s.count(PipelineMetrics.Counter.ROOT_SEARCH_STEPS));
+        assertTrue(s.nanos(PipelineMetrics.Stage.RAY_SEARCH) > 0);
+        assertEquals(0, s.count(PipelineMetrics.Counter.SUMMITS_TRACED));
+    }
+
+    @Test
+    public void elevationPyramidReadsFewerElevations() {
+        Interval2D extent = new Interval2D(new Interval1D(0, 3600 * 3), new Interval1D(0, 3600 * 3));
+        WavyDEM dDEM = new WavyDEM(extent);
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(toRadians(1.5), toRadians(1.5)), 1200, toRadians(45), toRadians(80), 150_000, 20, 10);
+        PipelineMetrics dense = new PipelineMetrics(), skipping = new PipelineMetrics();
+        PanoramaComputer pc = new PanoramaComputer(new ContinuousElevationModel(dDEM));
+        pc.withMetrics(dense).computePanorama(pp);
+        pc.withElevationPyramid(new MaxElevationPyramid(dDEM)).withMetrics(skipping).computePanorama(pp);
+        assertTrue(skipping.snapshot().count(PipelineMetrics.Counter.ELEVATION_SAMPLES)
+                < dense.snapshot().count(PipelineMetrics.Counter.ELEVATION_SAMPLES));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void withMetricsFailsWithNullMetrics() {
+        new PanoramaComputer(zeroContDEM()).withMetrics(null);
+    }
+
+    @Test
+    public void illinoisRefinementGivesDistancesUpToTheSamePrecision() {
+        int w = 40, h = 30;
+        GeoPoint o = new GeoPoint(toRadians(1), toRadians(1));
+        PanoramaParameters pp = new PanoramaParameters(o, 900, toRadians(45), toRadians(60), 50_000, w, h);
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        PipelineMetrics bisection = new PipelineMetrics(), illinois = new PipelineMetrics();
+        Panorama b = pc.withMetrics(bisection).computePanorama(pp);
+        Panorama i = pc.withRootRefinement(RootRefinement.ILLINOIS).withMetrics(illinois).computePanorama(pp);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                if (b.distanceAt(x, y) == POSITIVE_INFINITY) {
+                    assertEquals(POSITIVE_INFINITY, i.distanceAt(x, y), 0);
+                } else {
+                    // both abscissas are at most 4 m before the intersection
+                    double abscissaDifference = (b.distanceAt(x, y) - i.distanceAt(x, y)) * cos(pp.altitudeForY(y));
+                    assertEquals(0, abscissaDifference, 4 + 1e-3);
+                }
+            }
+        }
+        assertTrue(illinois.snapshot().count(PipelineMetrics.Counter.BISECTION_ITERATIONS)
+                < bisection.snapshot().count(PipelineMetrics.Counter.BISECTION_ITERATIONS));
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void withRootRefinementFailsWithNullMethod() {
+        new PanoramaComputer(zeroContDEM()).withRootRefinement(null);
+    }
+
+    @Test
+    public void pannedPanoramaReusesTheColumnsOfThePreviousOne() {
+        int w = 51, h = 20;
+        GeoPoint o = new GeoPoint(toRadians(1), toRadians(1));
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama previous = pc.computePanorama(new PanoramaParameters(o, 2000, toRadians(45), toRadians(50), 100_000, w, h));
+        PanoramaParameters pp = new PanoramaParameters(o, 2000, toRadians(50), toRadians(50), 100_000, w, h);
+        AtomicInteger computed = new AtomicInteger();
+        Panorama p = pc.computePanorama(pp, previous, true, columnCounter(computed));
+        assertEquals(5, computed.get());
+        Panorama s = pc.computePanorama(pp);
+        for (int x = 0; x < w; ++x)
+            for (int y = 0; y < h; ++y)
+                assertSameSample(s, p, x, y);
+    }
+
+    @Test
+    public void panoramaWithAnotherMaxDistanceIsIdenticalToComputedOne() {
+        int w = 40, h = 30;
+        GeoPoint o = new GeoPoint(toRadians(1), toRadians(1));
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        // the observer being below the crests, the rays hitting the ground
+        // hit it close, and their columns can be reused for a shorter
+        // maximum distance, but not for a longer one
+        int[] maxDistances = { 100_000, 60_000, 30_000, 100_000 };
+        int[] maxComputedColumns = { w, 0, 5, w };
+        Panorama previous = null;
+        for (int i = 0; i < maxDistances.length; ++i) {
+            PanoramaParameters pp = new PanoramaParameters(o, 900, toRadians(45), toRadians(60), maxDistances[i], w, h);
+            AtomicInteger computed = new AtomicInteger();
+            Panorama p = pc.computePanorama(pp, previous, false, columnCounter(computed));
+            assertTrue(computed.get() <= maxComputedColumns[i]);
+            Panorama s = pc.computePanorama(pp);
+            for (int x = 0; x < w; ++x)
+                for (int y = 0; y < h; ++y)
+                    assertSameSample(s, p, x, y);
+            previous = p;
+        }
+    }
+
+    @Test
+    public void panoramaOfAnotherObserverReusesNoColumn() {
+        int w = 20, h = 10;
+        PanoramaComputer pc = new PanoramaComputer(wavyContDEM());
+        Panorama previous = pc.computePanorama(new PanoramaParameters(new GeoPoint(0, 0), 2000, toRadians(45), toRadians(30), 10_000, w, h));
+        AtomicInteger computed = new AtomicInteger();
+        pc.computePanorama(new PanoramaParameters(new GeoPoint(0, 0), 2001, toRadians(45), toRadians(30), 10_000, w, h), previous, false, columnCounter(computed));
+        assertEquals(w, computed.get());
+    }
+
+    private static PanoramaComputer.Monitor columnCounter(AtomicInteger computed) {
+        return new PanoramaComputer.Monitor() {
+            @Override
+            public boolean isCancelled() { return false; }
+
+            @Override
+            public void columnComputed(int computedColumns, int totalColumns) {
+                computed.incrementAndGet();
+            }
+        };
+    }
+
+    private static void assertSameSample(Panorama e, Panorama a, int x, int y) {
+        assertSameSample(e, x, a, x, y);
+    }
+
+    private static void assertSameSample(Panorama e, int eX, Panorama a, int x, int y) {
+        assertEquals(e.distanceAt(eX, y), a.distanceAt(x, y), 0);
+        assertEquals(e.longitudeAt(eX, y), a.longitudeAt(x, y), 0);
+        assertEquals(e.latitudeAt(eX, y), a.latitudeAt(x, y), 0);
+        assertEquals(e.elevationAt(eX, y), a.elevationAt(x, y), 0);
+        assertEquals(e.slopeAt(eX, y), a.slopeAt(x, y), 0);
+    }
+
     @Test
     public void rayToGroundDistanceAccountsForEarthCurvatureAndRefraction() {
         double dropPerM2 = (1d - 0.13d) / (2d * 6_371_000d);
@@ -0,0 +1,268 @@
+package ch.epfl.alpano;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import ch.epfl.alpano.Panorama.Channel;
+
+/**
+ * Class used to save panoramas in files and to read them back (cannot be
+ * instantiated).
+ * <p>
+ * A file starts with a header made of a magic number, the version of the
+ * format and the parameters of the panorama (longitude and latitude of the
+ * observer, elevation of the observer, center azimuth, horizontal field of
+ * view, maximum distance, width and height). The values of the channels
+ * follow, one channel after the other in the order of {@link Channel}, each
+ * one row after row. All the values are big-endian.
+ * <p>
+ * A panorama read from a file views the mapping of the file, without copying
+ * it: the pages of a channel are only loaded from the disk when one of its
+ * values is read. A panorama is thus written in a new file which then replaces
+ * the previous one, so that the panoramas read from the previous one keep
+ * their values.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ * @see Panorama
+ */
+public final class PanoramaFile {
+
+    private static final int MAGIC = 0x414C504E; // "ALPN"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 2 * Integer.BYTES
+            + 4 * Double.BYTES + 4 * Integer.BYTES;
+
+    // private builder, this class cannot be instantiated
+    private PanoramaFile() {
+    }
+
+    /**
+     * Save a panorama in a file, replacing it. The panorama is written in a
+     * temporary file of the same directory, which is then moved atomically
+     * over the file, so that the file can be the one the panorama was read
+     * from
+     *
+     * @param panorama
+     *            the panorama
+     * @param file
+     *            the file
+     * @throws IOException
+     *             if the file cannot be written or replaced
+     * @throws NullPointerException
+     *             if the panorama is null
+     */
+    public static void write(Panorama panorama, File file) throws IOException {
+        replace(file, panorama.parameters(), channels -> {
+            for (Channel c : Channel.values()) {
+                channels[c.ordinal()].put(panorama.channelBuffer(c));
+            }
+        });
+    }
+
+    /**
+     * Compute a panorama by strips of columns and save it in a file,
+     * replacing it as {@link #write(Panorama, File)} does. Each strip is
+     * copied into the mapping of the file as soon as it is computed, so that
+     * only one strip of the panorama is held in memory
+     *
+     * @param computer
+     *            the computer of the panorama
+     * @param parameters
+     *            the parameters of the panorama
+     * @param stripWidth
+     *            the number of columns of a strip
+     * @param parallel
+     *            <code>true</code> to compute the columns of a strip in
+     *            parallel
+     * @param file
+     *            the file
+     * @throws IOException
+     *             if the file cannot be written or replaced, or if a channel
+     *             of the panorama is larger than a mapping
+     * @throws IllegalArgumentException
+     *             if the strip width is smaller than 2
+     * @throws NullPointerException
+     *             if the computer or the parameters are null
+     * @see PanoramaComputer#computePanoramaByStrips
+     */
+    public static void writeByStrips(PanoramaComputer computer,
+            PanoramaParameters parameters, int stripWidth, boolean parallel,
+            File file) throws IOException {
+        requireNonNull(computer);
+        int width = parameters.width();
+
+        replace(file, parameters,
+                channels -> computer.computePanoramaByStrips(parameters,
+                        stripWidth, parallel, (fromX, strip) -> {
+                            // each row of the strip is a part of a row of
+                            // the panorama
+                            int columns = strip.parameters().width();
+                            for (Channel c : Channel.values()) {
+                                FloatBuffer values = strip.channelBuffer(c);
+                                for (int y = 0; y < parameters.height(); ++y) {
+                                    values.limit(y * columns + columns)
+                                            .position(y * columns);
+                                    channels[c.ordinal()]
+                                            .position(y * width + fromX);
+                                    channels[c.ordinal()].put(values);
+                                }
+                            }
+                        }));
+    }
+
+    // the filling of the mappings of the channels of a new file
+    @FunctionalInterface
+    private interface ChannelsWriter {
+        void write(FloatBuffer[] channels) throws IOException;
+    }
+
+    // write a new file in the directory of a file, which it then replaces
+    // atomically
+    private static void replace(File file, PanoramaParameters p,
+            ChannelsWriter writer) throws IOException {
+        Path target = file.toPath().toAbsolutePath();
+        Path temporary = Files.createTempFile(target.getParent(),
+                target.getFileName().toString(), ".tmp");
+
+        try {
+            write(temporary.toFile(), p, writer);
+            Files.move(temporary, target, REPLACE_EXISTING, ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    // write the header of a new file, then its channels in their mappings
+    private static void write(File file, PanoramaParameters p,
+            ChannelsWriter writer) throws IOException {
+        long samples = (long) p.width() * p.height();
+        if (samples * Float.BYTES > Integer.MAX_VALUE) {
+            throw new IOException("channels larger than a mapping");
+        }
+
+        try (RandomAccessFile f = new RandomAccessFile(file, "rw");
+                FileChannel channel = f.getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION)
+                    .putDouble(p.observerPosition().longitude())
+                    .putDouble(p.observerPosition().latitude())
+                    .putInt(p.observerElevation())
+                    .putDouble(p.centerAzimuth())
+                    .putDouble(p.horizontalFieldOfView())
+                    .putInt(p.maxDistance()).putInt(p.width())
+                    .putInt(p.height());
+            header.flip();
+            while (header.hasRemaining()) {
+                channel.write(header);
+            }
+
+            // the values are copied in bulk into a mapping of the part of
+            // the file of each channel
+            MappedByteBuffer[] mappings = new MappedByteBuffer[Channel
+                    .values().length];
+            FloatBuffer[] channels = new FloatBuffer[mappings.length];
+            for (Channel c : Channel.values()) {
+                mappings[c.ordinal()] = channel.map(MapMode.READ_WRITE,
+                        position(c.ordinal(), samples),
+                        samples * Float.BYTES);
+                channels[c.ordinal()] = mappings[c.ordinal()].asFloatBuffer();
+            }
+            writer.write(channels);
+            for (MappedByteBuffer m : mappings) {
+                m.force();
+            }
+        }
+    }
+
+    /**
+     * Read a panorama saved in a file, mapping the file
+     *
+     * @param file
+     *            the file
+     * @return the panorama
+     * @throws IOException
+     *             if the file cannot be read, is wrongly formatted or was
+     *             written in another version of the format
+     */
+    public static Panorama read(File file) throws IOException {
+        requireNonNull(file);
+
+        try (RandomAccessFile f = new RandomAccessFile(file, "r");
+                FileChannel channel = f.getChannel()) {
+
+            long length = channel.size();
+            if (length < HEADER_BYTES) {
+                throw new IOException("wrongly formatted");
+            }
+
+            ByteBuffer header = channel.map(MapMode.READ_ONLY, 0,
+                    HEADER_BYTES);
+            if (header.getInt() != MAGIC) {
+                throw new IOException("wrongly formatted");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported version " + version);
+            }
+
+            PanoramaParameters parameters;
+            try {
+                double longitude = header.getDouble();
+                double latitude = header.getDouble();
+                parameters = new PanoramaParameters(
+                        new GeoPoint(longitude, latitude), header.getInt(),
+                        header.getDouble(), header.getDouble(),
+                        header.getInt(), header.getInt(), header.getInt());
+            } catch (IllegalArgumentException e) {
+                throw new IOException("wrongly formatted");
+            }
+
+            long samples = (long) parameters.width() * parameters.height();
+            long channelLength = samples * Float.BYTES;
+            if (length != position(Channel.values().length, samples)
+                    || channelLength > Integer.MAX_VALUE) {
+                throw new IOException("wrongly formatted");
+            }
+
+            // each channel is mapped on its own, as when it is written, so
+            // that only a channel must fit in a mapping. The mappings stay
+            // valid once the file is closed.
+            FloatBuffer[] channels = new FloatBuffer[Channel.values().length];
+            for (Channel c : Channel.values()) {
+                channels[c.ordinal()] = channel.map(MapMode.READ_ONLY,
+                        position(c.ordinal(), samples), channelLength)
+                        .asFloatBuffer();
+            }
+
+            return Panorama.of(parameters, channels);
+        }
+    }
+
+    /**
+     * Position in a file of the values of a channel, computed with longs as
+     * the file may be larger than a mapping
+     *
+     * @param channelIndex
+     *            the index of the channel, the number of channels giving the
+     *            length of the file
+     * @param samples
+     *            the number of samples of each channel
+     * @return the position, in bytes
+     */
+    static long position(int channelIndex, long samples) {
+        return HEADER_BYTES + channelIndex * samples * Float.BYTES;
+    }
+}
@@ -0,0 +1,168 @@
+package ch.epfl.alpano;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Panorama.Channel;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+
+public class PanoramaFileTest {
+
+    @Test(expected = IOException.class)
+    public void readFailsOnNonExistantFile() throws IOException {
+        PanoramaFile.read(new File("/   /d:/ééé"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsOnGarbage() throws IOException {
+        File f = tempFile();
+        Files.write(f.toPath(), new byte[1000]);
+        PanoramaFile.read(f);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsOnOtherVersion() throws IOException {
+        File f = tempFile();
+        PanoramaFile.write(randomPanorama(newRandom(), 4, 3), f);
+        try (RandomAccessFile r = new RandomAccessFile(f, "rw")) {
+            r.seek(4);
+            r.writeInt(2);
+        }
+        PanoramaFile.read(f);
+    }
+
+    @Test(expected = IOException.class)
+    public void readFailsOnTruncatedFile() throws IOException {
+        File f = tempFile();
+        PanoramaFile.write(randomPanorama(newRandom(), 4, 3), f);
+        try (RandomAccessFile r = new RandomAccessFile(f, "rw")) {
+            r.setLength(r.length() - 4);
+        }
+        PanoramaFile.read(f);
+    }
+
+    @Test
+    public void writtenPanoramaIsReadBackExactly() throws IOException {
+        Panorama p = randomPanorama(newRandom(), 37, 23);
+        File f = tempFile();
+        PanoramaFile.write(p, f);
+        Panorama r = PanoramaFile.read(f);
+
+        assertEquals(p.parameters(), r.parameters());
+        for (Channel c : Channel.values())
+            assertArrayEquals(p.channel(c), r.channel(c), 0);
+        for (int x = 0; x < 37; ++x) {
+            for (int y = 0; y < 23; ++y) {
+                assertEquals(p.distanceAt(x, y), r.distanceAt(x, y), 0);
+                assertEquals(p.longitudeAt(x, y), r.longitudeAt(x, y), 0);
+                assertEquals(p.latitudeAt(x, y), r.latitudeAt(x, y), 0);
+                assertEquals(p.elevationAt(x, y), r.elevationAt(x, y), 0);
+                assertEquals(p.slopeAt(x, y), r.slopeAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void writingReplacesALongerFile() throws IOException {
+        Random rng = newRandom();
+        File f = tempFile();
+        PanoramaFile.write(randomPanorama(rng, 40, 30), f);
+        Panorama p = randomPanorama(rng, 4, 3);
+        PanoramaFile.write(p, f);
+        assertArrayEquals(p.channel(Channel.SLOPE), PanoramaFile.read(f).channel(Channel.SLOPE), 0);
+    }
+
+    @Test
+    public void writingOntoTheFileOfAReadPanoramaKeepsIt() throws IOException {
+        Random rng = newRandom();
+        Panorama p = randomPanorama(rng, 40, 30);
+        File f = tempFile();
+        PanoramaFile.write(p, f);
+        Panorama r = PanoramaFile.read(f);
+
+        // the panorama is written onto the file it views
+        PanoramaFile.write(r, f);
+        assertArrayEquals(p.channel(Channel.ELEVATION), PanoramaFile.read(f).channel(Channel.ELEVATION), 0);
+
+        Panorama q = randomPanorama(rng, 4, 3);
+        PanoramaFile.write(q, f);
+        assertArrayEquals(q.channel(Channel.SLOPE), PanoramaFile.read(f).channel(Channel.SLOPE), 0);
+        for (Channel c : Channel.values())
+            assertArrayEquals(p.channel(c), r.channel(c), 0);
+        assertEquals(1, f.getParentFile().list((d, n) -> n.startsWith(f.getName())).length);
+    }
+
+    @Test
+    public void positionsOfLargeChannelsDoNotOverflow() {
+        // 5 channels of 110 million samples, 2.2 GB in all
+        long samples = 11_000L * 10_000L;
+        assertEquals(56, PanoramaFile.position(0, samples));
+        assertEquals(56 + 440_000_000L, PanoramaFile.position(1, samples));
+        assertEquals(56 + 1_760_000_000L, PanoramaFile.position(4, samples));
+        assertEquals(56 + 2_200_000_000L, PanoramaFile.position(Channel.values().length, samples));
+        assertEquals(56 + 5L * Integer.MAX_VALUE * Float.BYTES, PanoramaFile.position(5, Integer.MAX_VALUE));
+    }
+
+    @Test
+    public void panoramaWrittenByStripsIsTheComputedOne() throws IOException {
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(toRadians(7.5), toRadians(46.5)), 1500, toRadians(30), toRadians(60), 20_000, 41, 17);
+        PanoramaComputer pc = new PanoramaComputer(new ContinuousElevationModel(new WavyDEM()));
+        File f = tempFile();
+        PanoramaFile.writeByStrips(pc, pp, 6, true, f);
+        Panorama r = PanoramaFile.read(f);
+        Panorama p = pc.computePanorama(pp);
+
+        assertEquals(pp, r.parameters());
+        for (Channel c : Channel.values())
+            assertArrayEquals(p.channel(c), r.channel(c), 0);
+    }
+
+    private static Panorama randomPanorama(Random rng, int w, int h) {
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(toRadians(7.5), toRadians(46.5)), 1500, toRadians(rng.nextInt(360)), toRadians(60), 100_000, w, h);
+        Panorama.Builder b = new Panorama.Builder(pp);
+        for (int x = 0; x < w; ++x) {
+            for (int y = 0; y < h; ++y) {
+                if (rng.nextInt(4) != 0)
+                    b.setDistanceAt(x, y, rng.nextFloat() * 100_000);
+                b.setLongitudeAt(x, y, rng.nextFloat())
+                        .setLatitudeAt(x, y, rng.nextFloat())
+                        .setElevationAt(x, y, rng.nextFloat() * 4000)
+                        .setSlopeAt(x, y, rng.nextFloat());
+            }
+        }
+        return b.build();
+    }
+
+    // a wavy DEM around the observer
+    private static final class WavyDEM implements DiscreteElevationModel {
+        @Override
+        public void close() { }
+
+        @Override
+        public Interval2D extent() {
+            return new Interval2D(new Interval1D(7 * 3600, 8 * 3600), new Interval1D(46 * 3600, 47 * 3600));
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            return (1 + Math.sin(x / 50d) * Math.cos(y / 50d)) * 1000;
+        }
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("panorama", ".bin");
+        f.deleteOnExit();
+        return f;
+    }
+}
@@ -1,6 +1,8 @@
 package ch.epfl.alpano;
 
 import static java.util.Objects.requireNonNull;
+
+import java.util.Objects;
 import static ch.epfl.alpano.Math2.*;
 import static ch.epfl.alpano.Preconditions.*;
 
@@ -140,6 +142,28 @@ public final class PanoramaParameters {
         return halfHeight - (a / anglePerPixels());
     }
 
+    /**
+     * Parameters of a vertical strip of the panorama, made of some of its
+     * columns and all of its rows
+     * 
+     * @param fromX
+     *            the index of the first column of the strip
+     * @param width
+     *            the number of columns of the strip
+     * @return the parameters of the strip
+     * @throws IllegalArgumentException
+     *             if the columns are not in the field, or if the width is
+     *             smaller than 2
+     */
+    public PanoramaParameters strip(int fromX, int width) {
+        checkArgument(width >= 2 && fromX >= 0 && fromX + width <= width());
+
+        return new PanoramaParameters(observerPosition(), observerElevation(),
+                azimuthForX(fromX + (width - 1) / 2d),
+                Math.min(anglePerPixels() * (width - 1), PI2), maxDistance(),
+                width, height());
+    }
+
     boolean isValidSampleIndex(int x, int y) {
         return x >= 0 && x < width() && y >= 0 && y < height();
     }
@@ -231,4 +255,31 @@ public final class PanoramaParameters {
         return verticalFieldOfView;
     }
 
+    @Override
+    public boolean equals(Object thatO) {
+        if (!(thatO instanceof PanoramaParameters)) {
+            return false;
+        }
+
+        PanoramaParameters that = (PanoramaParameters) thatO;
+        return Double.compare(observerPosition().longitude(),
+                that.observerPosition().longitude()) == 0
+                && Double.compare(observerPosition().latitude(),
+                        that.observerPosition().latitude()) == 0
+                && observerElevation() == that.observerElevation()
+                && Double.compare(centerAzimuth(), that.centerAzimuth()) == 0
+                && Double.compare(horizontalFieldOfView(),
+                        that.horizontalFieldOfView()) == 0
+                && maxDistance() == that.maxDistance()
+                && width() == that.width() && height() == that.height();
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(observerPosition().longitude(),
+                observerPosition().latitude(), observerElevation(),
+                centerAzimuth(), horizontalFieldOfView(), maxDistance(),
+                width(), height());
+    }
+
 }
@@ -6,7 +6,10 @@ import static java.lang.Math.PI;
 import static java.lang.Math.floorMod;
 import static java.lang.Math.nextUp;
 import static java.lang.Math.toRadians;
+import static ch.epfl.test.ObjectTest.hashCodeIsCompatibleWithEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 import java.util.Random;
 
@@ -21,6 +24,47 @@ public class PanoramaParametersTest {
     private static int MAX_D = 1000;
     private static int W = 100, H = 100;
 
+    @Test
+    public void equalsIsStructural() {
+        PanoramaParameters p = new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, W, H);
+        assertTrue(p.equals(new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, W, H)));
+        assertFalse(p.equals(new PanoramaParameters(new GeoPoint(toRadians(4), nextUp(toRadians(4))), O_EL, C_AZ, H_FOV, MAX_D, W, H)));
+        assertFalse(p.equals(new PanoramaParameters(O_POS(), O_EL + 1, C_AZ, H_FOV, MAX_D, W, H)));
+        assertFalse(p.equals(new PanoramaParameters(O_POS(), O_EL, nextUp(C_AZ), H_FOV, MAX_D, W, H)));
+        assertFalse(p.equals(new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D + 1, W, H)));
+        assertFalse(p.equals(new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, W, H + 1)));
+        assertFalse(p.equals(null));
+    }
+
+    @Test
+    public void hashCodeAndEqualsAreCompatible() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            int w = 2 + rng.nextInt(3), h = 2 + rng.nextInt(3);
+            PanoramaParameters p1 = new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, w, h);
+            PanoramaParameters p2 = new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, 2 + rng.nextInt(3), 2 + rng.nextInt(3));
+            assertTrue(hashCodeIsCompatibleWithEquals(p1, p2));
+            assertEquals(p1.hashCode(), new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, w, h).hashCode());
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stripFailsWithColumnsOutsideTheField() {
+        new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, W, H).strip(W - 5, 10);
+    }
+
+    @Test
+    public void stripHasTheSamplingOfItsColumns() {
+        PanoramaParameters p = new PanoramaParameters(O_POS(), O_EL, C_AZ, H_FOV, MAX_D, W, H);
+        PanoramaParameters s = p.strip(30, 21);
+        assertEquals(21, s.width());
+        assertEquals(H, s.height());
+        for (int x = 0; x < s.width(); ++x)
+            assertEquals(p.azimuthForX(30 + x), s.azimuthForX(x), 1e-10);
+        for (int y = 0; y < s.height(); ++y)
+            assertEquals(p.altitudeForY(y), s.altitudeForY(y), 1e-10);
+    }
+
     @Test(expected = NullPointerException.class)
     public void constructorFailsWithNullObserverPosition() {
         new PanoramaParameters(null, O_EL, C_AZ, H_FOV, MAX_D, W, H);
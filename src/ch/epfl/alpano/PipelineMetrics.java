@@ -0,0 +1,224 @@
+package ch.epfl.alpano;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Records where the time of the display of a panorama goes: the time spent in
+ * each stage of the pipeline and some counters of the work done, added from
+ * any thread. The components only record anything when they are given a
+ * recorder, and then only add their values once per column or per call, so
+ * that the computations are not slowed down when no recorder is given.
+ * <p>
+ * The times of the stages are summed over the threads running them, so that
+ * they can be larger than the time actually elapsed when the panorama is
+ * computed in parallel.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ * @see PanoramaComputer#withMetrics(PipelineMetrics)
+ */
+public final class PipelineMetrics {
+
+    /**
+     * The stages of the pipeline
+     */
+    public enum Stage {
+        /**
+         * Search of the first interval of each ray containing the ground
+         */
+        RAY_SEARCH,
+        /**
+         * Improvement of the intervals containing the ground, by bisection
+         * or by the method chosen for the computer
+         */
+        BISECTION,
+        /**
+         * Reading of the elevation and the slope of the ground where the
+         * rays hit it
+         */
+        SLOPE,
+        /**
+         * Placement of the labels of the summits
+         */
+        LABELLING,
+        /**
+         * Painting of the image of the panorama
+         */
+        RENDERING
+    }
+
+    /**
+     * The counters of the work done by the pipeline
+     */
+    public enum Counter {
+        /**
+         * Elevations of the ground read from the model to compute the
+         * panorama
+         */
+        ELEVATION_SAMPLES,
+        /**
+         * Steps of the search of the intervals containing the ground, a step
+         * being either an interval checked or a part of a ray skipped
+         */
+        ROOT_SEARCH_STEPS,
+        /**
+         * Steps improving the intervals containing the ground, halvings for
+         * the bisection
+         */
+        BISECTION_ITERATIONS,
+        /**
+         * Columns whose computation stopped at a ray not hitting the ground,
+         * the rays above it being left at infinity
+         */
+        COLUMNS_TERMINATED_AT_INFINITY,
+        /**
+         * Summits near enough to the observer and in its horizontal field of
+         * view, but discarded without their visibility being checked, as
+         * above or below it
+         */
+        SUMMITS_CULLED,
+        /**
+         * Summits whose visibility was checked by following the ray going to
+         * them
+         */
+        SUMMITS_TRACED,
+        /**
+         * Summits whose visibility was checked against the distances of an
+         * already computed panorama
+         */
+        SUMMITS_DEPTH_TESTED
+    }
+
+    private static final Stage[] STAGES = Stage.values();
+    private static final Counter[] COUNTERS = Counter.values();
+
+    private final LongAdder[] nanos;
+    private final LongAdder[] counts;
+
+    /**
+     * Construct a recorder whose times and counters are all zero
+     */
+    public PipelineMetrics() {
+        nanos = new LongAdder[STAGES.length];
+        for (int i = 0; i < nanos.length; ++i) {
+            nanos[i] = new LongAdder();
+        }
+        counts = new LongAdder[COUNTERS.length];
+        for (int i = 0; i < counts.length; ++i) {
+            counts[i] = new LongAdder();
+        }
+    }
+
+    /**
+     * Add some time spent in a stage
+     *
+     * @param stage
+     *            the stage
+     * @param nanoseconds
+     *            the time, in nanoseconds
+     * @throws NullPointerException
+     *             if the stage is <code>null</code>
+     */
+    public void addNanos(Stage stage, long nanoseconds) {
+        nanos[stage.ordinal()].add(nanoseconds);
+    }
+
+    /**
+     * Add some work to a counter
+     *
+     * @param counter
+     *            the counter
+     * @param count
+     *            the amount of work
+     * @throws NullPointerException
+     *             if the counter is <code>null</code>
+     */
+    public void add(Counter counter, long count) {
+        counts[counter.ordinal()].add(count);
+    }
+
+    /**
+     * Give the current values of the times and the counters. The values added
+     * during the call may be only partly included.
+     *
+     * @return the values
+     */
+    public Snapshot snapshot() {
+        long[] n = new long[nanos.length];
+        for (int i = 0; i < n.length; ++i) {
+            n[i] = nanos[i].sum();
+        }
+        long[] c = new long[counts.length];
+        for (int i = 0; i < c.length; ++i) {
+            c[i] = counts[i].sum();
+        }
+        return new Snapshot(n, c);
+    }
+
+    /**
+     * Set all the times and the counters back to zero
+     */
+    public void reset() {
+        for (LongAdder a : nanos) {
+            a.reset();
+        }
+        for (LongAdder a : counts) {
+            a.reset();
+        }
+    }
+
+    /**
+     * The values of the times and the counters of a recorder at some point
+     */
+    public static final class Snapshot {
+        private final long[] nanos;
+        private final long[] counts;
+
+        private Snapshot(long[] nanos, long[] counts) {
+            this.nanos = nanos;
+            this.counts = counts;
+        }
+
+        /**
+         * The time spent in a stage
+         *
+         * @param stage
+         *            the stage
+         * @return the time, in nanoseconds
+         */
+        public long nanos(Stage stage) {
+            return nanos[requireNonNull(stage).ordinal()];
+        }
+
+        /**
+         * The value of a counter
+         *
+         * @param counter
+         *            the counter
+         * @return the value
+         */
+        public long count(Counter counter) {
+            return counts[requireNonNull(counter).ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder b = new StringBuilder();
+            for (Stage s : STAGES) {
+                b.append(String.format(Locale.ROOT, "%s %.1f ms, ",
+                        name(s), nanos(s) / 1e6));
+            }
+            for (Counter c : COUNTERS) {
+                b.append(name(c)).append(' ').append(count(c)).append(", ");
+            }
+            return b.substring(0, b.length() - 2);
+        }
+
+        private static String name(Enum<?> e) {
+            return e.name().toLowerCase(Locale.ROOT).replace('_', ' ');
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package ch.epfl.alpano;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.PipelineMetrics.Counter;
+import ch.epfl.alpano.PipelineMetrics.Snapshot;
+import ch.epfl.alpano.PipelineMetrics.Stage;
+
+public class PipelineMetricsTest {
+
+    @Test
+    public void newMetricsAreZero() {
+        Snapshot s = new PipelineMetrics().snapshot();
+        for (Stage stage : Stage.values()) {
+            assertEquals(0, s.nanos(stage));
+        }
+        for (Counter counter : Counter.values()) {
+            assertEquals(0, s.count(counter));
+        }
+    }
+
+    @Test
+    public void addedValuesAreSummed() {
+        PipelineMetrics m = new PipelineMetrics();
+        m.addNanos(Stage.BISECTION, 10);
+        m.addNanos(Stage.BISECTION, 5);
+        m.add(Counter.SUMMITS_TRACED, 3);
+        m.add(Counter.SUMMITS_TRACED, 4);
+        Snapshot s = m.snapshot();
+        assertEquals(15, s.nanos(Stage.BISECTION));
+        assertEquals(0, s.nanos(Stage.RAY_SEARCH));
+        assertEquals(7, s.count(Counter.SUMMITS_TRACED));
+        assertEquals(0, s.count(Counter.SUMMITS_CULLED));
+    }
+
+    @Test
+    public void snapshotIsNotChangedByLaterValues() {
+        PipelineMetrics m = new PipelineMetrics();
+        m.add(Counter.ELEVATION_SAMPLES, 1);
+        Snapshot s = m.snapshot();
+        m.add(Counter.ELEVATION_SAMPLES, 1);
+        m.reset();
+        assertEquals(1, s.count(Counter.ELEVATION_SAMPLES));
+    }
+
+    @Test
+    public void resetSetsEverythingBackToZero() {
+        PipelineMetrics m = new PipelineMetrics();
+        m.addNanos(Stage.RENDERING, 42);
+        m.add(Counter.ROOT_SEARCH_STEPS, 42);
+        m.reset();
+        assertEquals(0, m.snapshot().nanos(Stage.RENDERING));
+        assertEquals(0, m.snapshot().count(Counter.ROOT_SEARCH_STEPS));
+    }
+
+    @Test
+    public void toStringNamesStagesAndCounters() {
+        PipelineMetrics m = new PipelineMetrics();
+        m.addNanos(Stage.RAY_SEARCH, 2_500_000);
+        m.add(Counter.COLUMNS_TERMINATED_AT_INFINITY, 3);
+        String s = m.snapshot().toString();
+        assertEquals(true, s.startsWith("ray search 2.5 ms, "));
+        assertEquals(true, s.contains("columns terminated at infinity 3"));
+    }
+}
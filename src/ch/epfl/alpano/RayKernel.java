@@ -0,0 +1,352 @@
+package ch.epfl.alpano;
+
+import ch.epfl.alpano.dem.ElevationProfile;
+import ch.epfl.alpano.dem.MaxElevationPyramid;
+import static ch.epfl.alpano.Distance.EARTH_RADIUS;
+import static ch.epfl.alpano.Math2.sq;
+import static java.lang.Math.abs;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+/**
+ * Computes the intersection between the rays of a panorama column and the
+ * ground, working on primitive values only so that no object is allocated per
+ * sample
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ * @see Math2#firstIntervalContainingRoot
+ * @see Math2#improveRoot
+ * @see Math2#improveRootIllinois
+ */
+final class RayKernel {
+
+    private static final double REFRACTION_CONSTANT = 0.13;
+    private static final double D = (1.0 - REFRACTION_CONSTANT)
+            / (2 * EARTH_RADIUS);
+
+    // bounds of the length of the parts of a ray checked with the pyramid
+    private static final double MAX_SKIPPED_LENGTH = 16_384;
+    private static final double MIN_SKIPPED_LENGTH = 256;
+    // margin absorbing the rounding errors of the distance to the ground
+    private static final double SKIP_MARGIN = 1e-3;
+
+    private final ElevationProfile profile;
+    private final double ray0;
+    private final MaxElevationPyramid pyramid;
+
+    // work done so far, counted in plain fields as a kernel is only used by
+    // the thread computing its column
+    private long evaluations;
+    private long searchSteps;
+    private long bisections;
+
+    // the last interval found to contain the ground, with the distances to
+    // it at its bounds, so that they are not computed again to improve it
+    private double raySlope;
+    private double low, high;
+    private double valueAtLow, valueAtHigh;
+
+    /**
+     * Construct the kernel of a column
+     *
+     * @param profile
+     *            the profile of the column
+     * @param ray0
+     *            initial elevation of the rays
+     * @param pyramid
+     *            the pyramid of the maximum elevations of the DEM, used to
+     *            skip the parts of the rays that are above the ground, or
+     *            <code>null</code>
+     */
+    RayKernel(ElevationProfile profile, double ray0,
+            MaxElevationPyramid pyramid) {
+        this.profile = profile;
+        this.ray0 = ray0;
+        this.pyramid = pyramid;
+    }
+
+    /**
+     * Distance between a ray and the ground
+     *
+     * @param profile
+     *            the profile
+     * @param ray0
+     *            initial elevation
+     * @param raySlope
+     *            slope of the ray
+     * @param x
+     *            the distance from the origin of the profile
+     * @return the distance between the ray and the ground at x
+     */
+    static double rayToGround(ElevationProfile profile, double ray0,
+            double raySlope, double x) {
+        return ray0 + x * raySlope - profile.elevationAt(x) + sq(x) * D;
+    }
+
+    // distance between a ray of the column and the ground, counted
+    private double groundDistance(double raySlope, double x) {
+        ++evaluations;
+        return rayToGround(profile, ray0, raySlope, x);
+    }
+
+    /**
+     * Find the first interval containing the intersection of a ray with the
+     * ground, like {@link Math2#firstIntervalContainingRoot} but evaluating
+     * each bound only once
+     *
+     * @param raySlope
+     *            slope of the ray
+     * @param minX
+     *            the lower bound
+     * @param maxX
+     *            the upper bound
+     * @param dX
+     *            the size of the interval
+     * @return the lower bound of the interval, infinity if no interval has been
+     *         found, the interval being then the one improved by
+     *         {@link #improveRoot(double)} and
+     *         {@link #improveRootIllinois(double)}
+     */
+    double firstIntervalContainingRoot(double raySlope, double minX,
+            double maxX, double dX) {
+
+        if (pyramid != null) {
+            return firstIntervalContainingRootSkipping(raySlope, minX, maxX,
+                    dX);
+        }
+
+        double valueAtI = groundDistance(raySlope, minX);
+
+        for (double i = minX; i <= maxX - dX; i = i + dX) {
+
+            ++searchSteps;
+            double valueAtNext = groundDistance(raySlope, i + dX);
+            if (valueAtI * valueAtNext <= 0) {
+                return found(raySlope, i, i + dX, valueAtI, valueAtNext);
+            }
+            valueAtI = valueAtNext;
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+
+    // Same search, skipping the intervals in which the ray is proved to be
+    // above the highest ground by the pyramid. Both bounds of such intervals
+    // are positive, so they cannot be the first containing a root, and the
+    // other intervals are the same as in the dense search, which thus gives
+    // the same result.
+    private double firstIntervalContainingRootSkipping(double raySlope,
+            double minX, double maxX, double dX) {
+
+        double skippedLength = MAX_SKIPPED_LENGTH;
+        double i = minX;
+
+        while (i <= maxX - dX) {
+
+            if (skippedLength >= MIN_SKIPPED_LENGTH) {
+                ++searchSteps;
+                double end = min(i + skippedLength, maxX);
+
+                if (isAboveGround(raySlope, i, end)) {
+                    // skip the intervals ending before the end
+                    while (i + dX <= end && i <= maxX - dX) {
+                        i = i + dX;
+                    }
+                    skippedLength = min(2 * skippedLength,
+                            MAX_SKIPPED_LENGTH);
+                } else {
+                    skippedLength /= 2;
+                }
+
+            } else {
+                // dense search over the shortest length that may be skipped
+                double valueAtI = groundDistance(raySlope, i);
+                double end = i + MIN_SKIPPED_LENGTH;
+
+                while (i < end && i <= maxX - dX) {
+                    ++searchSteps;
+                    double valueAtNext = groundDistance(raySlope, i + dX);
+                    if (valueAtI * valueAtNext <= 0) {
+                        return found(raySlope, i, i + dX, valueAtI,
+                                valueAtNext);
+                    }
+                    valueAtI = valueAtNext;
+                    i = i + dX;
+                }
+                skippedLength = MIN_SKIPPED_LENGTH;
+            }
+        }
+
+        return Double.POSITIVE_INFINITY;
+    }
+
+    // remember the interval found to contain the ground and give its lower
+    // bound
+    private double found(double raySlope, double low, double high,
+            double valueAtLow, double valueAtHigh) {
+        this.raySlope = raySlope;
+        this.low = low;
+        this.high = high;
+        this.valueAtLow = valueAtLow;
+        this.valueAtHigh = valueAtHigh;
+        return low;
+    }
+
+    // check if the ray is above the highest ground between x1 and x2
+    private boolean isAboveGround(double raySlope, double x1, double x2) {
+        // the ray is a parabola, lowest at its vertex or at a bound
+        double vertex = -raySlope / (2 * D);
+        double lowestX = vertex > x1 && vertex < x2 ? vertex
+                : (ray(raySlope, x1) < ray(raySlope, x2) ? x1 : x2);
+
+        return ray(raySlope, lowestX) - SKIP_MARGIN > profile
+                .maxElevationBetween(x1, x2, pyramid);
+    }
+
+    // elevation of the ray at x, accounting for the curvature of the earth
+    private double ray(double raySlope, double x) {
+        return ray0 + x * raySlope + sq(x) * D;
+    }
+
+    /**
+     * Improve the last interval found to contain the intersection of a ray
+     * with the ground using binary search, like {@link Math2#improveRoot} but
+     * reusing the distances to the ground at its bounds
+     *
+     * @param epsilon
+     *            a size giving the precision
+     * @return the lower bound of an interval containing the intersection,
+     *         not larger than epsilon
+     */
+    double improveRoot(double epsilon) {
+        double x1 = low, x2 = high;
+        double valueAtX1 = valueAtLow, valueAtX2 = valueAtHigh;
+
+        while (true) {
+            // check if one of the bounds is a zero
+            if (valueAtX1 == 0) {
+                return x1;
+            } else if (valueAtX2 == 0) {
+                return x2;
+            }
+
+            // interval small enough
+            if (abs(x1 - x2) <= epsilon) {
+                return x1;
+            }
+
+            // middle of the interval
+            ++bisections;
+            double xm = (x1 + x2) / 2.0;
+            double valueAtXm = groundDistance(raySlope, xm);
+
+            // choose the next interval
+            if (valueAtXm * valueAtX1 < 0) {
+                x2 = xm;
+                valueAtX2 = valueAtXm;
+            } else if (valueAtXm * valueAtX2 < 0) {
+                x1 = xm;
+                valueAtX1 = valueAtXm;
+            } else {
+                // f(xm) == 0
+                return xm;
+            }
+        }
+    }
+
+    /**
+     * Improve the last interval found to contain the intersection of a ray
+     * with the ground using the Illinois variant of the false position
+     * method, like {@link Math2#improveRootIllinois} but reusing the
+     * distances to the ground at its bounds. The distance between a ray and
+     * the ground being smooth at the scale of an interval, it needs fewer
+     * distances than the binary search.
+     *
+     * @param epsilon
+     *            a size giving the precision
+     * @return the lower bound of an interval containing the intersection,
+     *         not larger than epsilon
+     */
+    double improveRootIllinois(double epsilon) {
+        double x1 = low, x2 = high;
+        double valueAtX1 = valueAtLow, valueAtX2 = valueAtHigh;
+        // the bound moved by the previous step, -1 for x1 and 1 for x2
+        int moved = 0;
+
+        while (true) {
+            // check if one of the bounds is a zero
+            if (valueAtX1 == 0) {
+                return x1;
+            } else if (valueAtX2 == 0) {
+                return x2;
+            }
+
+            // interval small enough
+            if (x2 - x1 <= epsilon) {
+                return x1;
+            }
+
+            // point where the chord crosses zero, kept away from the bounds
+            // so that the interval also shrinks when one bound is stuck
+            ++bisections;
+            double margin = epsilon / 2;
+            double xm = max(x1 + margin, min(x2 - margin,
+                    (x1 * valueAtX2 - x2 * valueAtX1)
+                            / (valueAtX2 - valueAtX1)));
+            double valueAtXm = groundDistance(raySlope, xm);
+
+            // choose the next interval, halving the value kept at the bound
+            // that did not move twice in a row
+            if (valueAtXm * valueAtX1 < 0) {
+                x2 = xm;
+                valueAtX2 = valueAtXm;
+                if (moved == 1) {
+                    valueAtX1 /= 2;
+                }
+                moved = 1;
+            } else if (valueAtXm * valueAtX2 < 0) {
+                x1 = xm;
+                valueAtX1 = valueAtXm;
+                if (moved == -1) {
+                    valueAtX2 /= 2;
+                }
+                moved = -1;
+            } else {
+                // f(xm) == 0
+                return xm;
+            }
+        }
+    }
+
+    /**
+     * Number of distances between a ray and the ground computed so far, each
+     * reading an elevation of the ground
+     *
+     * @return the number of distances
+     */
+    long evaluations() {
+        return evaluations;
+    }
+
+    /**
+     * Number of steps of the searches of the intervals containing the ground
+     * done so far: intervals checked and parts of rays checked with the
+     * pyramid
+     *
+     * @return the number of steps
+     */
+    long searchSteps() {
+        return searchSteps;
+    }
+
+    /**
+     * Number of steps improving the intervals containing the ground done so
+     * far, by binary search or by the Illinois method
+     *
+     * @return the number of steps
+     */
+    long bisections() {
+        return bisections;
+    }
+}
@@ -0,0 +1,26 @@
+package ch.epfl.alpano;
+
+/**
+ * The methods improving the intervals in which the rays of a panorama hit the
+ * ground. Both give the intersection up to the same precision.
+ * 
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ * @see PanoramaComputer#withRootRefinement(RootRefinement)
+ */
+public enum RootRefinement {
+    /**
+     * Binary search, halving the interval at each step
+     * 
+     * @see Math2#improveRoot
+     */
+    BISECTION,
+    /**
+     * Illinois variant of the false position method, cutting the interval
+     * where the chord between its bounds crosses the ground, which needs
+     * fewer elevations of the ground
+     * 
+     * @see Math2#improveRootIllinois
+     */
+    ILLINOIS
+}
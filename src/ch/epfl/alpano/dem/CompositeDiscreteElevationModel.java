@@ -57,6 +57,12 @@ final class CompositeDiscreteElevationModel implements DiscreteElevationModel {
 
     }
 
+    @Override
+    public DiscreteElevationModel modelContaining(int x, int y, int size) {
+        DiscreteElevationModel model = dem1.modelContaining(x, y, size);
+        return model != null ? model : dem2.modelContaining(x, y, size);
+    }
+
     @Override
     public void close() throws Exception {
         dem1.close();
@@ -9,6 +9,10 @@ import static java.lang.Math.*;
 import static java.util.Objects.requireNonNull;
 import static ch.epfl.alpano.dem.DiscreteElevationModel.sampleIndex;
 
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import ch.epfl.alpano.Interval2D;
+
 /**
  * Class that represents a continuous elevation model which gives the elevation
  * at any point in an area Which is an expansion to the DEM
@@ -21,6 +25,7 @@ import static ch.epfl.alpano.dem.DiscreteElevationModel.sampleIndex;
 final public class ContinuousElevationModel {
 
     private final DiscreteElevationModel dem;
+    private final SlopeGrid slopes;
     private static final double d = toMeters(1 / SAMPLES_PER_RADIAN);
 
     /**
@@ -32,7 +37,26 @@ final public class ContinuousElevationModel {
      *             if the dem is <code>null</code>
      */
     public ContinuousElevationModel(DiscreteElevationModel dem) {
+        this(dem, false);
+    }
+
+    /**
+     * The dem to be rendered continuous, optionally keeping the slopes at the
+     * samples in a grid so that each of them is computed only once
+     * 
+     * @param dem
+     *            : the DEM used
+     * @param precomputedSlopes
+     *            : true if the slopes at the samples must be kept, the grid
+     *            being filled by tiles, when the slopes of a tile are first
+     *            needed
+     * @throws NullPointerException
+     *             if the dem is <code>null</code>
+     */
+    public ContinuousElevationModel(DiscreteElevationModel dem,
+            boolean precomputedSlopes) {
         this.dem = requireNonNull(dem);
+        this.slopes = precomputedSlopes ? new SlopeGrid(dem.extent()) : null;
     }
 
     /**
@@ -45,18 +69,42 @@ final public class ContinuousElevationModel {
      * 
      */
     public double elevationAt(GeoPoint p) {
+        return elevationAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Gives the elevation at any point in the boundaries of the DEM using
+     * bilinear interpolation, without requiring a Geopoint
+     * 
+     * @param longitude
+     *            : the longitude of the location, in radians
+     * @param latitude
+     *            : the latitude of the location, in radians
+     * @return the elevation at the wanted location
+     */
+    public double elevationAt(double longitude, double latitude) {
         // indexes of the point
-        double xp = sampleIndex(p.longitude());
-        double yp = sampleIndex(p.latitude());
+        double xp = sampleIndex(longitude);
+        double yp = sampleIndex(latitude);
 
         int x = (int) floor(xp);
         int y = (int) floor(yp);
 
-        // close points used for the interpolation
-        double z00 = elevationAtIndex(x, y);
-        double z01 = elevationAtIndex(x, y + 1);
-        double z10 = elevationAtIndex(x + 1, y);
-        double z11 = elevationAtIndex(x + 1, y + 1);
+        // close points used for the interpolation, read without checks if
+        // they are all in the same DEM
+        double z00, z01, z10, z11;
+        DiscreteElevationModel block = dem.modelContaining(x, y, 1);
+        if (block != null) {
+            z00 = block.elevationSampleUnchecked(x, y);
+            z01 = block.elevationSampleUnchecked(x, y + 1);
+            z10 = block.elevationSampleUnchecked(x + 1, y);
+            z11 = block.elevationSampleUnchecked(x + 1, y + 1);
+        } else {
+            z00 = elevationAtIndex(x, y);
+            z01 = elevationAtIndex(x, y + 1);
+            z10 = elevationAtIndex(x + 1, y);
+            z11 = elevationAtIndex(x + 1, y + 1);
+        }
 
         return bilerp(z00, z10, z01, z11, xp - x, yp - y);
     }
@@ -70,18 +118,60 @@ final public class ContinuousElevationModel {
      * @return the elevation at the wanted location
      */
     public double slopeAt(GeoPoint p) {
+        return slopeAt(p.longitude(), p.latitude());
+    }
+
+    /**
+     * Gives the slope at any point in the boundaries of the DEM using bilinear
+     * interpolation, without requiring a Geopoint. If the slopes are
+     * precomputed, the slopes at the samples are read from the grid, and are
+     * thus rounded to float
+     * 
+     * @param longitude
+     *            : the longitude of the location, in radians
+     * @param latitude
+     *            : the latitude of the location, in radians
+     * @return the slope at the wanted location
+     */
+    public double slopeAt(double longitude, double latitude) {
         // indexes of the point
-        double xp = sampleIndex(p.longitude());
-        double yp = sampleIndex(p.latitude());
+        double xp = sampleIndex(longitude);
+        double yp = sampleIndex(latitude);
 
         int x = (int) floor(xp);
         int y = (int) floor(yp);
 
         // close points used for the interpolation
-        double z00 = slopeAtIndex(x, y);
-        double z01 = slopeAtIndex(x, y + 1);
-        double z10 = slopeAtIndex(x + 1, y);
-        double z11 = slopeAtIndex(x + 1, y + 1);
+        double z00, z01, z10, z11;
+        if (slopes != null) {
+            z00 = slopes.slopeAtIndex(x, y);
+            z01 = slopes.slopeAtIndex(x, y + 1);
+            z10 = slopes.slopeAtIndex(x + 1, y);
+            z11 = slopes.slopeAtIndex(x + 1, y + 1);
+        } else {
+            DiscreteElevationModel block = dem.modelContaining(x, y, 2);
+            if (block != null) {
+                // the 3x3 samples giving the four slopes, read without checks
+                double e00 = block.elevationSampleUnchecked(x, y);
+                double e01 = block.elevationSampleUnchecked(x, y + 1);
+                double e02 = block.elevationSampleUnchecked(x, y + 2);
+                double e10 = block.elevationSampleUnchecked(x + 1, y);
+                double e11 = block.elevationSampleUnchecked(x + 1, y + 1);
+                double e12 = block.elevationSampleUnchecked(x + 1, y + 2);
+                double e20 = block.elevationSampleUnchecked(x + 2, y);
+                double e21 = block.elevationSampleUnchecked(x + 2, y + 1);
+
+                z00 = slope(e00, e10, e01);
+                z01 = slope(e01, e11, e02);
+                z10 = slope(e10, e20, e11);
+                z11 = slope(e11, e21, e12);
+            } else {
+                z00 = slopeAtIndex(x, y);
+                z01 = slopeAtIndex(x, y + 1);
+                z10 = slopeAtIndex(x + 1, y);
+                z11 = slopeAtIndex(x + 1, y + 1);
+            }
+        }
 
         return bilerp(z00, z10, z01, z11, xp - x, yp - y);
     }
@@ -95,11 +185,82 @@ final public class ContinuousElevationModel {
     }
 
     private double slopeAtIndex(int x, int y) {
-        return acos(
-                d / (sqrt(
-                        sq(elevationAtIndex(x, y) - elevationAtIndex(x + 1, y))
-                                + sq(elevationAtIndex(x, y)
-                                        - elevationAtIndex(x, y + 1))
-                                + sq(d))));
+        return slope(elevationAtIndex(x, y), elevationAtIndex(x + 1, y),
+                elevationAtIndex(x, y + 1));
+    }
+
+    // slope at a sample, given its elevation and the ones of its neighbours
+    private static double slope(double elevation, double nextXElevation,
+            double nextYElevation) {
+        return acos(d / (sqrt(sq(elevation - nextXElevation)
+                + sq(elevation - nextYElevation) + sq(d))));
+    }
+
+    /**
+     * The slopes at the samples of the extent of the DEM, stored as floats in
+     * square tiles, each tile being computed the first time one of its slopes
+     * is needed. Two threads may compute the same tile at the same time, they
+     * then store identical values.
+     */
+    private final class SlopeGrid {
+        // the tiles have a side of 2^TILE_SHIFT samples
+        private static final int TILE_SHIFT = 8;
+        private static final int TILE_SIZE = 1 << TILE_SHIFT;
+
+        private final int fromX;
+        private final int fromY;
+        private final int toX;
+        private final int toY;
+        private final int tileColumns;
+        private final AtomicReferenceArray<float[]> tiles;
+
+        private SlopeGrid(Interval2D extent) {
+            fromX = extent.iX().includedFrom();
+            fromY = extent.iY().includedFrom();
+            toX = extent.iX().includedTo();
+            toY = extent.iY().includedTo();
+            tileColumns = ((toX - fromX) >> TILE_SHIFT) + 1;
+            int tileRows = ((toY - fromY) >> TILE_SHIFT) + 1;
+            tiles = new AtomicReferenceArray<>(tileColumns * tileRows);
+        }
+
+        private double slopeAtIndex(int x, int y) {
+            // samples outside of the extent are not stored
+            if (x < fromX || x > toX || y < fromY || y > toY) {
+                return ContinuousElevationModel.this.slopeAtIndex(x, y);
+            }
+
+            int offsetX = x - fromX;
+            int offsetY = y - fromY;
+            int tileIndex = (offsetY >> TILE_SHIFT) * tileColumns
+                    + (offsetX >> TILE_SHIFT);
+
+            float[] tile = tiles.get(tileIndex);
+            if (tile == null) {
+                tile = computeTile(offsetX >> TILE_SHIFT,
+                        offsetY >> TILE_SHIFT);
+                tiles.set(tileIndex, tile);
+            }
+
+            return tile[(offsetY & (TILE_SIZE - 1)) * TILE_SIZE
+                    + (offsetX & (TILE_SIZE - 1))];
+        }
+
+        private float[] computeTile(int tileX, int tileY) {
+            float[] tile = new float[TILE_SIZE * TILE_SIZE];
+            int x0 = fromX + (tileX << TILE_SHIFT);
+            int y0 = fromY + (tileY << TILE_SHIFT);
+            int maxX = min(TILE_SIZE, toX - x0 + 1);
+            int maxY = min(TILE_SIZE, toY - y0 + 1);
+
+            for (int j = 0; j < maxY; ++j) {
+                for (int i = 0; i < maxX; ++i) {
+                    tile[j * TILE_SIZE + i] = (float) ContinuousElevationModel.this
+                            .slopeAtIndex(x0 + i, y0 + j);
+                }
+            }
+
+            return tile;
+        }
     }
 }
@@ -108,6 +108,28 @@ public class ContinuousElevationModelTest {
         }
     }
 
+    @Test
+    public void precomputedSlopesAreTheComputedOnes() {
+        DiscreteElevationModel dDEM = new RandomElevationDEM(new Interval2D(
+                new Interval1D(0, 299), new Interval1D(0, 599)), 1000);
+        ContinuousElevationModel cDEM = new ContinuousElevationModel(dDEM);
+        ContinuousElevationModel gridDEM = new ContinuousElevationModel(dDEM, true);
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            // including points around the extent
+            double x = rng.nextDouble() * 310 - 5;
+            double y = rng.nextDouble() * 610 - 5;
+            GeoPoint p = pointForSampleIndex(x, y);
+            assertEquals(cDEM.slopeAt(p), gridDEM.slopeAt(p), 1e-6);
+        }
+        for (int x = 0; x < 300; x += 7) {
+            for (int y = 0; y < 600; y += 11) {
+                GeoPoint p = pointForSampleIndex(x, y);
+                assertEquals((float) cDEM.slopeAt(p), (float) gridDEM.slopeAt(p), 0);
+            }
+        }
+    }
+
     private static GeoPoint pointForSampleIndex(double x, double y) {
         return new GeoPoint(toRadians(x / 3600d), toRadians(y / 3600d));
     }
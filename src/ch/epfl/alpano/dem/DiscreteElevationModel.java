@@ -54,6 +54,43 @@ public interface DiscreteElevationModel extends AutoCloseable {
      */
     double elevationSample(int x, int y);
 
+    /**
+     * Gives the elevation at a location known to be in the DEM, without
+     * checking it, so that the callers that already checked it do not pay
+     * twice
+     * 
+     * @param x
+     *            the first index of the location, which must be in the extent
+     * @param y
+     *            the second index of the location, which must be in the extent
+     * @return the elevation at the location, unspecified if it is not in the
+     *         extent
+     */
+    default double elevationSampleUnchecked(int x, int y) {
+        return elevationSample(x, y);
+    }
+
+    /**
+     * Gives a DEM containing all the samples of a square block, whose samples
+     * can thus be read without any check, or <code>null</code> if there is
+     * none. A DEM made of several others gives the one containing the block,
+     * if any
+     * 
+     * @param x
+     *            the first index of the lower corner of the block
+     * @param y
+     *            the second index of the lower corner of the block
+     * @param size
+     *            the difference between the indexes of the upper corner and
+     *            the ones of the lower corner
+     * @return a DEM containing the block, or <code>null</code>
+     */
+    default DiscreteElevationModel modelContaining(int x, int y, int size) {
+        return extent().contains(x, y) && extent().contains(x + size, y + size)
+                ? this
+                : null;
+    }
+
     /**
      * Will make the union between the DEM and an other one
      * 
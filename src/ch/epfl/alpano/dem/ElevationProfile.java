@@ -5,6 +5,7 @@ import static ch.epfl.alpano.Preconditions.checkArgument;
 import static java.util.Objects.*;
 import static java.lang.Math.*;
 import static ch.epfl.alpano.Math2.*;
+import static ch.epfl.alpano.dem.DiscreteElevationModel.sampleIndex;
 import ch.epfl.alpano.Distance;
 
 import ch.epfl.alpano.GeoPoint;
@@ -21,7 +22,8 @@ import ch.epfl.alpano.GeoPoint;
 public final class ElevationProfile {
 
     private final ContinuousElevationModel elevationModel;
-    private final GeoPoint[] positions;
+    private final double[] longitudes;
+    private final double[] latitudes;
     private final double length;
 
     private final static double POINT_INTERVAL = 4096;
@@ -51,8 +53,9 @@ public final class ElevationProfile {
         this.length = length;
         this.elevationModel = requireNonNull(elevationModel);
 
-        // construct an array containing several positions split regularly
-        positions = new GeoPoint[(int) ceil((length / POINT_INTERVAL)) + 1];
+        // construct arrays containing several positions split regularly
+        longitudes = new double[(int) ceil((length / POINT_INTERVAL)) + 1];
+        latitudes = new double[longitudes.length];
 
         double oriLatitude = origin.latitude();
         double cosLat = cos(oriLatitude);
@@ -62,7 +65,7 @@ public final class ElevationProfile {
         double cosAz = cos(mathAzimuth);
         double oriLongitude = origin.longitude();
 
-        for (int i = 0; i < positions.length; ++i) {
+        for (int i = 0; i < longitudes.length; ++i) {
             double latitude = asin((sinLat
                     * cos(Distance.toRadians(i * POINT_INTERVAL)))
                     + (cosLat * sin(Distance.toRadians(i * POINT_INTERVAL))
@@ -73,7 +76,8 @@ public final class ElevationProfile {
                             / cos(latitude)),
                     oriLongitude);
 
-            positions[i] = new GeoPoint(longitude, latitude);
+            longitudes[i] = longitude;
+            latitudes[i] = latitude;
         }
 
     }
@@ -90,8 +94,7 @@ public final class ElevationProfile {
 
     public double slopeAt(double x) {
         checkArgument(x <= length && x >= 0);
-        GeoPoint p = positionAt(x);
-        return elevationModel.slopeAt(p);
+        return elevationModel.slopeAt(longitudeAt(x), latitudeAt(x));
     }
 
     /**
@@ -105,8 +108,7 @@ public final class ElevationProfile {
      */
     public double elevationAt(double x) {
         checkArgument(x <= length && x >= 0);
-        GeoPoint p = positionAt(x);
-        return elevationModel.elevationAt(p);
+        return elevationModel.elevationAt(longitudeAt(x), latitudeAt(x));
     }
 
     /**
@@ -120,14 +122,89 @@ public final class ElevationProfile {
      *             if x is negative is bigger than the length
      */
     public GeoPoint positionAt(double x) {
+        return new GeoPoint(longitudeAt(x), latitudeAt(x));
+    }
+
+    /**
+     * Compute the longitude of the location at a certain distance from the
+     * origin location, without creating a GeoPoint
+     * 
+     * @param x
+     *            : the distance from the original location
+     * @return the longitude at a certain distance from the origin
+     * @throws IllegalArgumentException
+     *             if x is negative is bigger than the length
+     */
+    public double longitudeAt(double x) {
+        return interpolate(longitudes, x);
+    }
+
+    /**
+     * Compute the latitude of the location at a certain distance from the
+     * origin location, without creating a GeoPoint
+     * 
+     * @param x
+     *            : the distance from the original location
+     * @return the latitude at a certain distance from the origin
+     * @throws IllegalArgumentException
+     *             if x is negative is bigger than the length
+     */
+    public double latitudeAt(double x) {
+        return interpolate(latitudes, x);
+    }
+
+    /**
+     * Compute an upper bound of the elevation of the profile between two
+     * distances from the original location
+     * 
+     * @param x1
+     *            : the smallest distance from the original location
+     * @param x2
+     *            : the greatest distance from the original location
+     * @param pyramid
+     *            : the pyramid of the maximum elevations of the DEM of the
+     *            profile
+     * @return an elevation greater or equal to all those of the profile
+     *         between x1 and x2
+     * @throws IllegalArgumentException
+     *             if x1 is negative, x2 bigger than the length, or x1 bigger
+     *             than x2
+     */
+    public double maxElevationBetween(double x1, double x2,
+            MaxElevationPyramid pyramid) {
+        checkArgument(x1 <= x2);
+
+        // the profile is straight between two positions, so the positions
+        // at x1, x2 and in between bound it
+        double minX = sampleIndex(longitudeAt(x1));
+        double maxX = minX;
+        double minY = sampleIndex(latitudeAt(x1));
+        double maxY = minY;
+
+        for (int i = (int) floor(x1 / POINT_INTERVAL) + 1; i
+                * POINT_INTERVAL < x2; ++i) {
+            minX = min(minX, sampleIndex(longitudes[i]));
+            maxX = max(maxX, sampleIndex(longitudes[i]));
+            minY = min(minY, sampleIndex(latitudes[i]));
+            maxY = max(maxY, sampleIndex(latitudes[i]));
+        }
+
+        minX = min(minX, sampleIndex(longitudeAt(x2)));
+        maxX = max(maxX, sampleIndex(longitudeAt(x2)));
+        minY = min(minY, sampleIndex(latitudeAt(x2)));
+        maxY = max(maxY, sampleIndex(latitudeAt(x2)));
+
+        // the interpolation of the elevation uses the next samples
+        return pyramid.maxElevation((int) floor(minX), (int) floor(minY),
+                (int) floor(maxX) + 1, (int) floor(maxY) + 1);
+    }
+
+    // linear interpolation between the two positions surrounding x
+    private double interpolate(double[] values, double x) {
         checkArgument(x <= length && x >= 0);
         int x1 = (int) floor(x / POINT_INTERVAL);
 
-        double longitude = lerp(positions[x1].longitude(),
-                positions[x1 + 1].longitude(), x / POINT_INTERVAL - x1);
-        double latitude = lerp(positions[x1].latitude(),
-                positions[x1 + 1].latitude(), x / POINT_INTERVAL - x1);
-        return new GeoPoint(longitude, latitude);
+        return lerp(values[x1], values[x1 + 1], x / POINT_INTERVAL - x1);
     }
 
 }
@@ -37,6 +37,17 @@ public class ElevationProfileTest {
         p.elevationAt(101);
     }
 
+    @Test
+    public void longitudeAndLatitudeAtMatchPositionAt() {
+        ElevationProfile p = new ElevationProfile(newConstantSlopeDEM(), new GeoPoint(toRadians(3), toRadians(40)), toRadians(123), 100_000);
+        for (int i = 0; i < 100; ++i) {
+            double x = 999d * i;
+            GeoPoint g = p.positionAt(x);
+            assertEquals(g.longitude(), p.longitudeAt(x), 0);
+            assertEquals(g.latitude(), p.latitudeAt(x), 0);
+        }
+    }
+
     @Test
     public void elevationAtWorksOnConstantSlopeDEMGoingNorth() {
         ElevationProfile p = new ElevationProfile(newConstantSlopeDEM(), new GeoPoint(0,0), 0, 100_000);
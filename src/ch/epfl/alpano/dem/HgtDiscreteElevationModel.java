@@ -23,8 +23,15 @@ import static ch.epfl.alpano.Preconditions.*;
 
 public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
 
+    /**
+     * length of a hgt file, in bytes
+     */
+    static final long FILE_LENGTH = 25934402;
+
     private ShortBuffer buffer;
     private final Interval2D extent;
+    private final int fromX;
+    private final int toY;
 
     /**
      * Construct a dem from a hgt file
@@ -36,6 +43,34 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
      *             occurs when reading the file
      */
     public HgtDiscreteElevationModel(File file) {
+        extent = extentOf(file);
+        fromX = extent.iX().includedFrom();
+        toY = extent.iY().includedTo();
+
+        try (FileInputStream fileStream = new FileInputStream(file)) {
+
+            long length = file.length();
+
+            checkArgument(length == FILE_LENGTH, "wrong length");
+
+            buffer = fileStream.getChannel().map(MapMode.READ_ONLY, 0, length)
+                    .asShortBuffer();
+        } catch (IOException e) {
+            // if exception, input file wrongly formatted
+            throw new IllegalArgumentException();
+        }
+    }
+
+    /**
+     * Gives the extent of a hgt file from its name, without opening it
+     * 
+     * @param file
+     *            the hgt file
+     * @return the extent of the DEM of the file
+     * @throws IllegalArgumentException
+     *             if the file name is not properly formated
+     */
+    static Interval2D extentOf(File file) {
         String fileName = file.getName();
 
         checkArgument(fileName.length() == 11, "wrong length");
@@ -65,24 +100,11 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
         checkArgument(fileName.substring(7).equals(".hgt"), "should be a .hgt");
 
         // create the extent
-        extent = new Interval2D(
+        return new Interval2D(
                 new Interval1D(fromLongitude * SAMPLES_PER_DEGREE,
                         (fromLongitude + 1) * SAMPLES_PER_DEGREE),
                 new Interval1D(fromLatitude * SAMPLES_PER_DEGREE,
                         (fromLatitude + 1) * SAMPLES_PER_DEGREE));
-
-        try (FileInputStream fileStream = new FileInputStream(file)) {
-
-            long length = file.length();
-
-            checkArgument(length == 25934402, "wrong length");
-
-            buffer = fileStream.getChannel().map(MapMode.READ_ONLY, 0, length)
-                    .asShortBuffer();
-        } catch (IOException e) {
-            // if exception, input file wrongly formatted
-            throw new IllegalArgumentException();
-        }
     }
 
     @Override
@@ -99,10 +121,13 @@ public final class HgtDiscreteElevationModel implements DiscreteElevationModel {
     public double elevationSample(int x, int y) {
         checkArgument(extent().contains(x, y));
 
-        return buffer.get(Math.abs(x - extent().iX().includedFrom())
-                + Math.abs(y - (extent().iY().includedTo()))
-                        * (SAMPLES_PER_DEGREE + 1));
+        return elevationSampleUnchecked(x, y);
+    }
 
+    @Override
+    public double elevationSampleUnchecked(int x, int y) {
+        // the rows of the file go from north to south
+        return buffer.get((x - fromX) + (toY - y) * (SAMPLES_PER_DEGREE + 1));
     }
 
 }
@@ -0,0 +1,275 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.LongAdder;
+
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * A manager of hgt files, giving DEMs that open and map their file only when
+ * their first sample is read, and keeping a bounded number of files mapped:
+ * when a file has to be mapped while the bound is reached, the least recently
+ * used one is released. A released file stays mapped until the garbage
+ * collector collects its model, which the manager keeps track of.
+ *
+ * @author Louis Amaudruz (271808)
+ * @author Mathieu Chevalley (274698)
+ *
+ * @see HgtDiscreteElevationModel
+ */
+public final class HgtTileManager {
+
+    private final int maxMappedTiles;
+    private final List<LazyHgtTile> mappedTiles;
+    // the models of the released files, until they are collected with their
+    // mapping
+    private final Set<Reference<HgtDiscreteElevationModel>> releasedModels;
+    private final ReferenceQueue<HgtDiscreteElevationModel> collectedModels;
+
+    // incremented each time another tile is used, it dates the uses of the
+    // tiles. Races may give the same date to two uses, which only makes the
+    // eviction order approximate.
+    private volatile long epoch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private long maps;
+    private long unmaps;
+
+    /**
+     * Construct a manager
+     *
+     * @param maxMappedTiles
+     *            the maximum number of files mapped at the same time
+     * @throws IllegalArgumentException
+     *             if maxMappedTiles is not positive
+     */
+    public HgtTileManager(int maxMappedTiles) {
+        checkArgument(maxMappedTiles > 0);
+        this.maxMappedTiles = maxMappedTiles;
+        this.mappedTiles = new ArrayList<>(maxMappedTiles);
+        this.releasedModels = new HashSet<>();
+        this.collectedModels = new ReferenceQueue<>();
+    }
+
+    /**
+     * Gives a DEM of a hgt file, the file being opened when the first sample
+     * is read
+     *
+     * @param file
+     *            the hgt file
+     * @return the DEM of the file
+     * @throws NullPointerException
+     *             if the file is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the file name is not properly formated
+     */
+    public DiscreteElevationModel tile(File file) {
+        return new LazyHgtTile(requireNonNull(file));
+    }
+
+    /**
+     * Construct the mosaic of all the hgt files of a directory, none of them
+     * being opened before one of its samples is read
+     *
+     * @param directory
+     *            the directory containing the hgt files
+     * @param fill
+     *            the elevation of the samples of the missing tiles
+     * @return the mosaic of the hgt files
+     * @throws IOException
+     *             if the directory cannot be listed
+     * @throws IllegalArgumentException
+     *             if there are no hgt files, or if one of their names is
+     *             wrongly formatted
+     * @see TiledDiscreteElevationModel
+     */
+    public TiledDiscreteElevationModel mosaic(File directory, double fill)
+            throws IOException {
+        File[] files = directory.listFiles((d, name) -> name.endsWith(".hgt"));
+        if (files == null) {
+            throw new IOException("cannot list " + directory);
+        }
+
+        List<DiscreteElevationModel> tiles = new ArrayList<>();
+        for (File file : files) {
+            tiles.add(tile(file));
+        }
+
+        return new TiledDiscreteElevationModel(tiles, fill);
+    }
+
+    /**
+     * Number of times a tile whose file was mapped was used after another
+     * one, the following reads of its samples not being counted
+     *
+     * @return the number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Number of times a tile was used while its file had to be mapped
+     *
+     * @return the number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Number of files mapped since the creation of the manager
+     *
+     * @return the number of mappings
+     */
+    public synchronized long maps() {
+        return maps;
+    }
+
+    /**
+     * Number of files released since the creation of the manager, either to
+     * respect the bound or because their tile was closed
+     *
+     * @return the number of releases
+     */
+    public synchronized long unmaps() {
+        return unmaps;
+    }
+
+    /**
+     * Number of bytes of the files currently mapped, the released ones
+     * included until the garbage collector collects their mapping
+     *
+     * @return the number of resident bytes
+     */
+    public synchronized long residentBytes() {
+        forgetCollectedModels();
+        return (mappedTiles.size() + releasedModels.size())
+                * HgtDiscreteElevationModel.FILE_LENGTH;
+    }
+
+    // stop tracking the released models which were collected
+    private synchronized void forgetCollectedModels() {
+        Reference<? extends HgtDiscreteElevationModel> r;
+        while ((r = collectedModels.poll()) != null) {
+            releasedModels.remove(r);
+        }
+    }
+
+    // map the file of a tile, releasing the least recently used one if needed
+    private synchronized HgtDiscreteElevationModel map(LazyHgtTile tile) {
+        // another thread may have mapped it in the meantime
+        if (tile.model != null) {
+            return tile.model;
+        }
+
+        if (mappedTiles.size() == maxMappedTiles) {
+            LazyHgtTile leastRecentlyUsed = mappedTiles.get(0);
+            for (LazyHgtTile t : mappedTiles) {
+                if (t.lastUse < leastRecentlyUsed.lastUse) {
+                    leastRecentlyUsed = t;
+                }
+            }
+            unmap(leastRecentlyUsed);
+        }
+
+        HgtDiscreteElevationModel model = new HgtDiscreteElevationModel(
+                tile.file);
+        ++epoch;
+        ++maps;
+        tile.lastUse = epoch;
+        tile.model = model;
+        mappedTiles.add(tile);
+        return model;
+    }
+
+    // release the file of a tile. The model is not closed, as other threads
+    // may still be reading it: the mapping is released by the garbage
+    // collector once they are done, the API having no explicit unmapping.
+    private synchronized void unmap(LazyHgtTile tile) {
+        if (mappedTiles.remove(tile)) {
+            forgetCollectedModels();
+            releasedModels
+                    .add(new WeakReference<>(tile.model, collectedModels));
+            tile.model = null;
+            ++unmaps;
+        }
+    }
+
+    /**
+     * A DEM of a hgt file whose extent is known from the file name, and whose
+     * file is mapped by the manager when needed
+     */
+    private final class LazyHgtTile implements DiscreteElevationModel {
+        private final File file;
+        private final Interval2D extent;
+
+        // accessed without synchronization on the fast path
+        private volatile HgtDiscreteElevationModel model;
+        private volatile long lastUse;
+
+        private LazyHgtTile(File file) {
+            this.file = file;
+            this.extent = HgtDiscreteElevationModel.extentOf(file);
+        }
+
+        @Override
+        public Interval2D extent() {
+            return extent;
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            return model().elevationSample(x, y);
+        }
+
+        @Override
+        public double elevationSampleUnchecked(int x, int y) {
+            return model().elevationSampleUnchecked(x, y);
+        }
+
+        // the mapped model itself, so that the samples of the block are read
+        // from it without going through this tile
+        @Override
+        public DiscreteElevationModel modelContaining(int x, int y, int size) {
+            return extent.contains(x, y) && extent.contains(x + size, y + size)
+                    ? model()
+                    : null;
+        }
+
+        // the model of the file, mapped if needed. The hits are counted and
+        // the use is dated only when another tile was used in the meantime,
+        // so that reading the same tile costs two volatile reads and no write
+        private HgtDiscreteElevationModel model() {
+            HgtDiscreteElevationModel m = model;
+            if (m == null) {
+                misses.increment();
+                return map(this);
+            }
+            long e = epoch;
+            if (lastUse != e) {
+                hits.increment();
+                epoch = e + 1;
+                lastUse = e + 1;
+            }
+            return m;
+        }
+
+        @Override
+        public void close() {
+            unmap(this);
+        }
+    }
+}
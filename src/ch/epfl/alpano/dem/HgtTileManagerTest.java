@@ -0,0 +1,145 @@
+package ch.epfl.alpano.dem;
+
+import static java.nio.file.StandardOpenOption.CREATE_NEW;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class HgtTileManagerTest {
+    private final static long HGT_FILE_SIZE = 3601L * 3601L * 2L;
+    private final static String[] NAMES = { "N45E006.hgt", "N45E007.hgt", "N46E006.hgt" };
+    private static Path FAKE_HGT_DIR;
+
+    @BeforeClass
+    public static void createFakeHgtFiles() throws IOException {
+        FAKE_HGT_DIR = Files.createTempDirectory("hgt");
+        for (int i = 0; i < NAMES.length; ++i) {
+            Path p = FAKE_HGT_DIR.resolve(NAMES[i]);
+            try (FileChannel c = FileChannel.open(p, CREATE_NEW, READ, WRITE)) {
+                // the first sample of each file is its number
+                c.map(MapMode.READ_WRITE, 0, HGT_FILE_SIZE).asShortBuffer().put(0, (short) (i + 1));
+            }
+        }
+    }
+
+    @AfterClass
+    public static void deleteFakeHgtFiles() throws IOException {
+        for (String name : NAMES)
+            Files.delete(FAKE_HGT_DIR.resolve(name));
+        Files.delete(FAKE_HGT_DIR);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithZeroTiles() {
+        new HgtTileManager(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void tileFailsWithInvalidName() {
+        new HgtTileManager(1).tile(new File("N4xE006.hgt"));
+    }
+
+    @Test
+    public void tilesAreNotMappedBeforeTheirFirstSample() throws Exception {
+        HgtTileManager m = new HgtTileManager(2);
+        DiscreteElevationModel dem = m.mosaic(FAKE_HGT_DIR.toFile(), 0);
+        assertEquals(new Interval2D(new Interval1D(6 * 3600, 8 * 3600), new Interval1D(45 * 3600, 47 * 3600)), dem.extent());
+        assertEquals(0, m.maps());
+        assertEquals(0, m.residentBytes());
+    }
+
+    @Test
+    public void leastRecentlyUsedTileIsReleased() throws Exception {
+        HgtTileManager m = new HgtTileManager(2);
+        DiscreteElevationModel[] tiles = new DiscreteElevationModel[NAMES.length];
+        for (int i = 0; i < NAMES.length; ++i)
+            tiles[i] = m.tile(FAKE_HGT_DIR.resolve(NAMES[i]).toFile());
+
+        assertEquals(1, tiles[0].elevationSample(6 * 3600, 46 * 3600), 0);
+        assertEquals(2, tiles[1].elevationSample(7 * 3600, 46 * 3600), 0);
+        assertEquals(1, tiles[0].elevationSample(6 * 3600, 46 * 3600), 0);
+        assertEquals(2, m.maps());
+        assertEquals(2 * 25934402L, m.residentBytes());
+
+        // the second tile is the least recently used one
+        assertEquals(3, tiles[2].elevationSample(6 * 3600, 47 * 3600), 0);
+        assertEquals(1, tiles[0].elevationSample(6 * 3600, 46 * 3600), 0);
+        assertEquals(3, m.maps());
+        assertEquals(1, m.unmaps());
+        assertEquals(2, tiles[1].elevationSample(7 * 3600, 46 * 3600), 0);
+        assertEquals(4, m.maps());
+        assertEquals(2, m.unmaps());
+
+        assertEquals(4, m.misses());
+        assertEquals(2, m.hits());
+        assertEquals(2 * 25934402L, residentBytesOnceCollected(m, 2 * 25934402L));
+
+        for (DiscreteElevationModel t : tiles)
+            t.close();
+        assertEquals(0, residentBytesOnceCollected(m, 0));
+        assertEquals(4, m.unmaps());
+    }
+
+    @Test
+    public void onlyTheSwitchesBetweenTilesAreCounted() throws Exception {
+        HgtTileManager m = new HgtTileManager(2);
+        DiscreteElevationModel t0 = m.tile(FAKE_HGT_DIR.resolve(NAMES[0]).toFile());
+        DiscreteElevationModel t1 = m.tile(FAKE_HGT_DIR.resolve(NAMES[1]).toFile());
+
+        for (int i = 0; i < 10; ++i)
+            t0.elevationSample(6 * 3600 + i, 45 * 3600);
+        assertEquals(1, m.misses());
+        assertEquals(0, m.hits());
+
+        DiscreteElevationModel block = t1.modelContaining(7 * 3600, 45 * 3600, 2);
+        assertEquals(2, block.elevationSampleUnchecked(7 * 3600, 46 * 3600), 0);
+        for (int i = 0; i < 10; ++i)
+            t1.elevationSample(7 * 3600 + i, 45 * 3600);
+        assertEquals(2, m.misses());
+        assertEquals(0, m.hits());
+
+        t0.elevationSample(6 * 3600, 46 * 3600);
+        t0.elevationSample(6 * 3600, 46 * 3600);
+        assertEquals(1, m.hits());
+        assertEquals(null, t0.modelContaining(7 * 3600, 46 * 3600, 1));
+    }
+
+    @Test
+    public void releasedTilesAreResidentUntilCollected() throws Exception {
+        HgtTileManager m = new HgtTileManager(1);
+        DiscreteElevationModel[] tiles = new DiscreteElevationModel[NAMES.length];
+        for (int i = 0; i < NAMES.length; ++i)
+            tiles[i] = m.tile(FAKE_HGT_DIR.resolve(NAMES[i]).toFile());
+
+        for (DiscreteElevationModel t : tiles)
+            t.elevationSample(t.extent().iX().includedFrom(), t.extent().iY().includedFrom());
+        long resident = m.residentBytes();
+        assertTrue(resident >= 25934402L && resident <= 3 * 25934402L);
+        assertEquals(25934402L, residentBytesOnceCollected(m, 25934402L));
+    }
+
+    // the resident bytes once they are the expected ones, or after some
+    // collections of the garbage
+    private static long residentBytesOnceCollected(HgtTileManager m, long expected) throws InterruptedException {
+        for (int i = 0; i < 100 && m.residentBytes() != expected; ++i) {
+            System.gc();
+            Thread.sleep(10);
+        }
+        return m.residentBytes();
+    }
+}
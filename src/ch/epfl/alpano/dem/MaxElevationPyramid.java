@@ -0,0 +1,165 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * A pyramid of the maximum elevations of a DEM: each level splits the extent
+ * of the DEM in square cells, twice as large as those of the previous level,
+ * and stores the highest elevation of each cell. It gives upper bounds of the
+ * elevation over any area in a few lookups.
+ *
+ * @author Louis Amaudruz (271808)
+ * @author Mathieu Chevalley (274698)
+ *
+ * @see DiscreteElevationModel
+ */
+public final class MaxElevationPyramid {
+
+    // the cells of the first level have a side of 2^BASE_SHIFT samples
+    private static final int BASE_SHIFT = 3;
+    // maximum number of cells read by a query
+    private static final int MAX_QUERY_CELLS = 16;
+
+    private final int fromX;
+    private final int fromY;
+    private final int toX;
+    private final int toY;
+    private final float[][] levels;
+    private final int[] columns;
+
+    /**
+     * Construct the pyramid of a DEM, reading all of its samples once
+     *
+     * @param dem
+     *            the DEM
+     * @throws NullPointerException
+     *             if the dem is <code>null</code>
+     */
+    public MaxElevationPyramid(DiscreteElevationModel dem) {
+        Interval2D extent = requireNonNull(dem).extent();
+        fromX = extent.iX().includedFrom();
+        fromY = extent.iY().includedFrom();
+        toX = extent.iX().includedTo();
+        toY = extent.iY().includedTo();
+
+        // number of levels needed to end with a single cell
+        int size = max(extent.iX().size(), extent.iY().size());
+        int levelCount = 1;
+        while (((size - 1) >> (BASE_SHIFT + levelCount - 1)) > 0) {
+            ++levelCount;
+        }
+
+        levels = new float[levelCount][];
+        columns = new int[levelCount];
+
+        // first level, computed from the samples
+        int cols = cellIndex(toX - fromX, 0) + 1;
+        int rows = cellIndex(toY - fromY, 0) + 1;
+        float[] cells = new float[cols * rows];
+        Arrays.fill(cells, Float.NEGATIVE_INFINITY);
+        for (int y = fromY; y <= toY; ++y) {
+            int rowStart = cellIndex(y - fromY, 0) * cols;
+            for (int x = fromX; x <= toX; ++x) {
+                int i = rowStart + cellIndex(x - fromX, 0);
+                cells[i] = max(cells[i], roundUp(dem.elevationSample(x, y)));
+            }
+        }
+        levels[0] = cells;
+        columns[0] = cols;
+
+        // next levels, each cell being the maximum of four cells
+        for (int level = 1; level < levelCount; ++level) {
+            int previousCols = cols;
+            int previousRows = rows;
+            float[] previous = cells;
+
+            cols = (previousCols + 1) / 2;
+            rows = (previousRows + 1) / 2;
+            cells = new float[cols * rows];
+            Arrays.fill(cells, Float.NEGATIVE_INFINITY);
+            for (int y = 0; y < previousRows; ++y) {
+                for (int x = 0; x < previousCols; ++x) {
+                    int i = (y / 2) * cols + x / 2;
+                    cells[i] = max(cells[i], previous[y * previousCols + x]);
+                }
+            }
+            levels[level] = cells;
+            columns[level] = cols;
+        }
+    }
+
+    /**
+     * Upper bound of the elevations of the samples in a rectangle, samples
+     * outside of the extent of the DEM having an elevation of 0, as in the
+     * continuous elevation model
+     *
+     * @param x1
+     *            the first index of the lower corner
+     * @param y1
+     *            the second index of the lower corner
+     * @param x2
+     *            the first index of the upper corner
+     * @param y2
+     *            the second index of the upper corner
+     * @return an elevation greater or equal to all those of the rectangle
+     * @throws IllegalArgumentException
+     *             if the corners are not ordered
+     */
+    public double maxElevation(int x1, int y1, int x2, int y2) {
+        checkArgument(x1 <= x2 && y1 <= y2);
+
+        double maxElevation = Double.NEGATIVE_INFINITY;
+
+        // samples outside of the extent
+        if (x1 < fromX || y1 < fromY || x2 > toX || y2 > toY) {
+            maxElevation = 0;
+        }
+
+        // clip the rectangle to the extent
+        x1 = max(x1, fromX) - fromX;
+        y1 = max(y1, fromY) - fromY;
+        x2 = min(x2, toX) - fromX;
+        y2 = min(y2, toY) - fromY;
+        if (x1 > x2 || y1 > y2) {
+            return maxElevation;
+        }
+
+        // finest level on which few cells cover the rectangle
+        int level = 0;
+        while (level < levels.length - 1 && (cellIndex(x2, level)
+                - cellIndex(x1, level) + 1)
+                * (cellIndex(y2, level) - cellIndex(y1, level)
+                        + 1) > MAX_QUERY_CELLS) {
+            ++level;
+        }
+
+        float[] cells = levels[level];
+        int cols = columns[level];
+        for (int y = cellIndex(y1, level); y <= cellIndex(y2, level); ++y) {
+            for (int x = cellIndex(x1, level); x <= cellIndex(x2,
+                    level); ++x) {
+                maxElevation = max(maxElevation, cells[y * cols + x]);
+            }
+        }
+
+        return maxElevation;
+    }
+
+    // index of the cell of a level containing the offset from the extent
+    private static int cellIndex(int offset, int level) {
+        return offset >> (BASE_SHIFT + level);
+    }
+
+    // the smallest float greater or equal to the elevation
+    private static float roundUp(double elevation) {
+        float f = (float) elevation;
+        return f < elevation ? Math.nextUp(f) : f;
+    }
+}
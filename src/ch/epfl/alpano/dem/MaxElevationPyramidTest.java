@@ -0,0 +1,64 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.max;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class MaxElevationPyramidTest {
+    private final static Interval2D EXTENT = new Interval2D(
+            new Interval1D(-300, 700),
+            new Interval1D(100, 600));
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullDEM() {
+        new MaxElevationPyramid(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void maxElevationFailsWithUnorderedCorners() {
+        new MaxElevationPyramid(new WavyDEM(EXTENT)).maxElevation(10, 200, 9, 300);
+    }
+
+    @Test
+    public void maxElevationIsAnUpperBoundOfTheSamples() {
+        WavyDEM dem = new WavyDEM(EXTENT);
+        MaxElevationPyramid pyramid = new MaxElevationPyramid(dem);
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            int x1 = -300 + rng.nextInt(1001), y1 = 100 + rng.nextInt(501);
+            int x2 = x1 + rng.nextInt(700 - x1 + 1), y2 = y1 + rng.nextInt(600 - y1 + 1);
+            double expected = Double.NEGATIVE_INFINITY;
+            for (int x = x1; x <= x2; ++x)
+                for (int y = y1; y <= y2; ++y)
+                    expected = max(expected, dem.elevationSample(x, y));
+            double actual = pyramid.maxElevation(x1, y1, x2, y2);
+            assertTrue(actual >= expected);
+        }
+    }
+
+    @Test
+    public void maxElevationOfTheWholeExtentIsTheHighestSample() {
+        WavyDEM dem = new WavyDEM(EXTENT);
+        double expected = Double.NEGATIVE_INFINITY;
+        for (int x = -300; x <= 700; ++x)
+            for (int y = 100; y <= 600; ++y)
+                expected = max(expected, dem.elevationSample(x, y));
+        assertEquals(expected, new MaxElevationPyramid(dem).maxElevation(-300, 100, 700, 600), 1e-3);
+    }
+
+    @Test
+    public void maxElevationOutsideTheExtentIsZero() {
+        MaxElevationPyramid pyramid = new MaxElevationPyramid(new WavyDEM(EXTENT));
+        assertEquals(0, pyramid.maxElevation(800, 100, 900, 200), 0);
+        assertEquals(1000, pyramid.maxElevation(-400, 0, 800, 700), 1e-3);
+    }
+}
@@ -0,0 +1,183 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.floorDiv;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+/**
+ * A DEM made of a rectangular mosaic of tiles of one degree, like the hgt
+ * files. The tile of a sample is found by integer division, whatever the
+ * number of tiles, and the samples of the missing tiles of the mosaic have a
+ * fill elevation
+ *
+ * @author Louis Amaudruz (271808)
+ * @author Mathieu Chevalley (274698)
+ *
+ * @see DiscreteElevationModel
+ */
+public final class TiledDiscreteElevationModel
+        implements DiscreteElevationModel {
+
+    private final Interval2D extent;
+    private final int fromTileX;
+    private final int fromTileY;
+    private final int tileColumns;
+    private final int tileRows;
+    private final DiscreteElevationModel[] tiles;
+    private final double fill;
+
+    /**
+     * Construct the mosaic of some tiles
+     *
+     * @param tiles
+     *            the tiles, each one covering one degree in longitude and in
+     *            latitude, starting at an integer number of degrees
+     * @param fill
+     *            the elevation of the samples of the missing tiles
+     * @throws NullPointerException
+     *             if tiles or one of them is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if there are no tiles, if a tile does not cover exactly one
+     *             degree or if two tiles cover the same degree
+     */
+    public TiledDiscreteElevationModel(
+            List<? extends DiscreteElevationModel> tiles, double fill) {
+        checkArgument(!tiles.isEmpty(), "no tiles");
+
+        int minTileX = Integer.MAX_VALUE, minTileY = Integer.MAX_VALUE;
+        int maxTileX = Integer.MIN_VALUE, maxTileY = Integer.MIN_VALUE;
+        for (DiscreteElevationModel tile : tiles) {
+            Interval2D tileExtent = requireNonNull(tile).extent();
+            checkArgument(isDegree(tileExtent.iX()) && isDegree(tileExtent.iY()),
+                    "not a tile of one degree");
+            minTileX = min(minTileX, tileIndex(tileExtent.iX()));
+            minTileY = min(minTileY, tileIndex(tileExtent.iY()));
+            maxTileX = max(maxTileX, tileIndex(tileExtent.iX()));
+            maxTileY = max(maxTileY, tileIndex(tileExtent.iY()));
+        }
+
+        fromTileX = minTileX;
+        fromTileY = minTileY;
+        tileColumns = maxTileX - minTileX + 1;
+        tileRows = maxTileY - minTileY + 1;
+        this.tiles = new DiscreteElevationModel[tileColumns * tileRows];
+
+        for (DiscreteElevationModel tile : tiles) {
+            int i = (tileIndex(tile.extent().iY()) - fromTileY) * tileColumns
+                    + tileIndex(tile.extent().iX()) - fromTileX;
+            checkArgument(this.tiles[i] == null, "two tiles at the same place");
+            this.tiles[i] = tile;
+        }
+
+        this.extent = new Interval2D(
+                new Interval1D(minTileX * SAMPLES_PER_DEGREE,
+                        (maxTileX + 1) * SAMPLES_PER_DEGREE),
+                new Interval1D(minTileY * SAMPLES_PER_DEGREE,
+                        (maxTileY + 1) * SAMPLES_PER_DEGREE));
+        this.fill = fill;
+    }
+
+    /**
+     * Construct the mosaic of all the hgt files of a directory
+     *
+     * @param directory
+     *            the directory containing the hgt files
+     * @param fill
+     *            the elevation of the samples of the missing tiles
+     * @return the mosaic of the hgt files
+     * @throws IOException
+     *             if the directory cannot be listed
+     * @throws IllegalArgumentException
+     *             if there are no hgt files, or if one of them is wrongly
+     *             formatted
+     * @see HgtDiscreteElevationModel
+     */
+    public static TiledDiscreteElevationModel fromDirectory(File directory,
+            double fill) throws IOException {
+        File[] files = directory.listFiles((d, name) -> name.endsWith(".hgt"));
+        if (files == null) {
+            throw new IOException("cannot list " + directory);
+        }
+
+        List<DiscreteElevationModel> tiles = new ArrayList<>();
+        for (File file : files) {
+            tiles.add(new HgtDiscreteElevationModel(file));
+        }
+
+        return new TiledDiscreteElevationModel(tiles, fill);
+    }
+
+    @Override
+    public Interval2D extent() {
+        return extent;
+    }
+
+    @Override
+    public double elevationSample(int x, int y) {
+        checkArgument(extent.contains(x, y));
+
+        int tileX = floorDiv(x, SAMPLES_PER_DEGREE) - fromTileX;
+        int tileY = floorDiv(y, SAMPLES_PER_DEGREE) - fromTileY;
+
+        DiscreteElevationModel tile = tileAt(tileX, tileY);
+
+        // the samples on the sides are shared with the previous tiles
+        if (tile == null && x % SAMPLES_PER_DEGREE == 0) {
+            tile = tileAt(tileX - 1, tileY);
+        }
+        if (tile == null && y % SAMPLES_PER_DEGREE == 0) {
+            tile = tileAt(tileX, tileY - 1);
+        }
+        if (tile == null && x % SAMPLES_PER_DEGREE == 0
+                && y % SAMPLES_PER_DEGREE == 0) {
+            tile = tileAt(tileX - 1, tileY - 1);
+        }
+
+        return tile == null ? fill : tile.elevationSample(x, y);
+    }
+
+    @Override
+    public DiscreteElevationModel modelContaining(int x, int y, int size) {
+        DiscreteElevationModel tile = tileAt(
+                floorDiv(x, SAMPLES_PER_DEGREE) - fromTileX,
+                floorDiv(y, SAMPLES_PER_DEGREE) - fromTileY);
+        return tile == null ? null : tile.modelContaining(x, y, size);
+    }
+
+    @Override
+    public void close() throws Exception {
+        for (DiscreteElevationModel tile : tiles) {
+            if (tile != null) {
+                tile.close();
+            }
+        }
+    }
+
+    // the tile at the given position in the mosaic, null if there is none
+    private DiscreteElevationModel tileAt(int tileX, int tileY) {
+        if (tileX < 0 || tileX >= tileColumns || tileY < 0
+                || tileY >= tileRows) {
+            return null;
+        }
+        return tiles[tileY * tileColumns + tileX];
+    }
+
+    private static boolean isDegree(Interval1D interval) {
+        return interval.includedFrom() % SAMPLES_PER_DEGREE == 0
+                && interval.size() == SAMPLES_PER_DEGREE + 1;
+    }
+
+    private static int tileIndex(Interval1D interval) {
+        return interval.includedFrom() / SAMPLES_PER_DEGREE;
+    }
+}
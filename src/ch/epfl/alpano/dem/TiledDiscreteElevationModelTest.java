@@ -0,0 +1,122 @@
+package ch.epfl.alpano.dem;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.util.Arrays.asList;
+import static java.util.Collections.emptyList;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+
+public class TiledDiscreteElevationModelTest {
+    private final static int D = DiscreteElevationModel.SAMPLES_PER_DEGREE;
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutTiles() {
+        new TiledDiscreteElevationModel(emptyList(), 0);
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullTile() {
+        new TiledDiscreteElevationModel(asList(tile(0, 0), null), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTileNotCoveringOneDegree() {
+        new TiledDiscreteElevationModel(asList(new WavyDEM(new Interval2D(
+                new Interval1D(0, D), new Interval1D(0, D - 1)))), 0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithTwoTilesAtTheSamePlace() {
+        new TiledDiscreteElevationModel(asList(tile(2, 3), tile(2, 3)), 0);
+    }
+
+    @Test
+    public void extentIsTheBoundingBoxOfTheTiles() {
+        DiscreteElevationModel dem = new TiledDiscreteElevationModel(
+                asList(tile(-2, 5), tile(1, 7)), 0);
+        assertEquals(new Interval2D(new Interval1D(-2 * D, 2 * D),
+                new Interval1D(5 * D, 8 * D)), dem.extent());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void elevationSampleFailsOutsideOfTheExtent() {
+        new TiledDiscreteElevationModel(asList(tile(0, 0)), 0)
+                .elevationSample(D + 1, 0);
+    }
+
+    @Test
+    public void elevationSampleIsTheOneOfTheTileOrTheFill() {
+        // a mosaic of 3x2 tiles without its middle top one
+        DiscreteElevationModel dem = new TiledDiscreteElevationModel(
+                asList(tile(-1, 45), tile(0, 45), tile(1, 45), tile(-1, 46),
+                        tile(1, 46)), -42);
+        DiscreteElevationModel reference = new WavyDEM(dem.extent());
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            int x = -D + rng.nextInt(3 * D + 1);
+            int y = 45 * D + rng.nextInt(2 * D + 1);
+            boolean inGap = x > 0 && x < D && y > 46 * D;
+            assertEquals(inGap ? -42 : reference.elevationSample(x, y),
+                    dem.elevationSample(x, y), 0);
+        }
+    }
+
+    @Test
+    public void samplesOnTheSidesOfAGapAreTheOnesOfTheTiles() {
+        DiscreteElevationModel dem = new TiledDiscreteElevationModel(
+                asList(tile(-1, 45), tile(0, 45), tile(1, 45), tile(-1, 46),
+                        tile(1, 46)), -42);
+        DiscreteElevationModel reference = new WavyDEM(dem.extent());
+        for (int k = 0; k <= D; k += 10) {
+            assertEquals(reference.elevationSample(0, 46 * D + k), dem.elevationSample(0, 46 * D + k), 0);
+            assertEquals(reference.elevationSample(D, 46 * D + k), dem.elevationSample(D, 46 * D + k), 0);
+            assertEquals(reference.elevationSample(k, 46 * D), dem.elevationSample(k, 46 * D), 0);
+        }
+        assertEquals(-42, dem.elevationSample(D / 2, 47 * D), 0);
+    }
+
+    @Test
+    public void modelContainingGivesTheTileOfBlocksInsideATile() {
+        DiscreteElevationModel t00 = tile(0, 0), t10 = tile(1, 0);
+        DiscreteElevationModel dem = new TiledDiscreteElevationModel(asList(t00, t10), 0);
+        assertSame(t00, dem.modelContaining(0, 0, 2));
+        assertSame(t00, dem.modelContaining(D - 1, D - 1, 1));
+        assertSame(t10, dem.modelContaining(D, 10, 2));
+        assertNull(dem.modelContaining(D - 1, 10, 2));
+        assertNull(dem.modelContaining(2 * D, 10, 1));
+    }
+
+    @Test
+    public void continuousModelIsTheSameOverTilesAndOverUnions() {
+        DiscreteElevationModel tiled = new TiledDiscreteElevationModel(
+                asList(tile(0, 0), tile(1, 0), tile(0, 1), tile(1, 1)), 0);
+        DiscreteElevationModel union = tile(0, 0).union(tile(1, 0))
+                .union(tile(0, 1).union(tile(1, 1)));
+        ContinuousElevationModel c1 = new ContinuousElevationModel(tiled);
+        ContinuousElevationModel c2 = new ContinuousElevationModel(union);
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            // around the extent and the sides of the tiles
+            double lon = toRadians(rng.nextDouble() * 2.2 - 0.1);
+            double lat = toRadians(rng.nextDouble() * 2.2 - 0.1);
+            assertEquals(c2.elevationAt(lon, lat), c1.elevationAt(lon, lat), 0);
+            assertEquals(c2.slopeAt(lon, lat), c1.slopeAt(lon, lat), 0);
+        }
+    }
+
+    private static DiscreteElevationModel tile(int longitude, int latitude) {
+        return new WavyDEM(new Interval2D(
+                new Interval1D(longitude * D, (longitude + 1) * D),
+                new Interval1D(latitude * D, (latitude + 1) * D)));
+    }
+}
@@ -3,7 +3,11 @@ package ch.epfl.alpano.gui;
 import javafx.util.StringConverter;
 
 import java.io.File;
+import java.io.IOException;
 import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Locale;
@@ -11,10 +15,13 @@ import java.util.Locale;
 import ch.epfl.alpano.Azimuth;
 import ch.epfl.alpano.Panorama;
 import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.PipelineMetrics;
+import ch.epfl.alpano.PipelineMetrics.Counter;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
-import ch.epfl.alpano.summit.GazetteerParser;
+import ch.epfl.alpano.dem.TiledDiscreteElevationModel;
+import ch.epfl.alpano.summit.BinaryGazetteer;
 import ch.epfl.alpano.summit.Summit;
 import javafx.application.Application;
 import javafx.beans.binding.Bindings;
@@ -27,6 +34,7 @@ import javafx.geometry.Insets;
 import javafx.scene.Scene;
 import javafx.scene.control.ChoiceBox;
 import javafx.scene.control.Label;
+import javafx.scene.control.ProgressBar;
 import javafx.scene.control.ScrollPane;
 import javafx.scene.control.TextArea;
 import javafx.scene.control.TextField;
@@ -61,6 +69,7 @@ public final class Alpano extends Application {
     private static final Color UPDATE_NOTICE_BACKGROUND_COLOR = new Color(1, 1,
             1, 0.9);
     private static final int UPDATE_TEXT_SIZE = 40;
+    private static final int PROGRESS_BAR_WIDTH = 300;
     private static final String UPDATE_TEXT = "Les paramètres du panorama ont changé."
             + " \nCliquez ici pour mettre le dessin à jour.";
 
@@ -69,8 +78,7 @@ public final class Alpano extends Application {
     private final ObjectProperty<String> infoText;
 
     public Alpano() throws Exception {
-        List<Summit> summits = GazetteerParser
-                .readSummitsFrom(new File("alps.txt"));
+        List<Summit> summits = loadSummits();
         parametersBean = new PanoramaParametersBean(
                 FIRST_PANORAMA);
         computerBean = new PanoramaComputerBean(summits, createDem());
@@ -92,24 +100,44 @@ public final class Alpano extends Application {
 
     }
 
+    // the summits of the working directory, read from their binary
+    // gazetteer, which is built from alps.txt when it is missing or older
+    // than it. Also used by the batch renderer and the server.
+    static List<Summit> loadSummits() throws IOException {
+        File text = new File("alps.txt");
+        File binary = new File("alps.bin");
+
+        if (!binary.exists() || binary.lastModified() < text.lastModified()) {
+            // written aside, so that an interrupted conversion leaves no
+            // truncated gazetteer
+            File converted = File.createTempFile("alps", ".bin",
+                    binary.getAbsoluteFile().getParentFile());
+            try {
+                BinaryGazetteer.convert(text, converted);
+                Files.move(converted.toPath(), binary.toPath(),
+                        StandardCopyOption.REPLACE_EXISTING);
+            } finally {
+                converted.delete();
+            }
+        }
+
+        return BinaryGazetteer.open(binary).summits();
+    }
+
+    // the DEM of the hgt files of the working directory, also used by the
+    // batch renderer and the server
     @SuppressWarnings("resource")
-    private ContinuousElevationModel createDem() throws Exception {
-        DiscreteElevationModel dem1 = new HgtDiscreteElevationModel(
-                new File("N45E006.hgt")).union(
-                        new HgtDiscreteElevationModel(new File("N45E007.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N45E008.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N45E009.hgt")));
-        DiscreteElevationModel dem2 = new HgtDiscreteElevationModel(
-                new File("N46E006.hgt")).union(
-                        new HgtDiscreteElevationModel(new File("N46E007.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N46E008.hgt")))
-                        .union(new HgtDiscreteElevationModel(
-                                new File("N46E009.hgt")));
-
-        return new ContinuousElevationModel(dem1.union(dem2));
+    static ContinuousElevationModel createDem() throws Exception {
+        List<DiscreteElevationModel> tiles = new ArrayList<>();
+        for (int latitude = 45; latitude <= 46; ++latitude) {
+            for (int longitude = 6; longitude <= 9; ++longitude) {
+                tiles.add(new HgtDiscreteElevationModel(new File(String.format(
+                        Locale.ROOT, "N%02dE%03d.hgt", latitude, longitude))));
+            }
+        }
+
+        return new ContinuousElevationModel(
+                new TiledDiscreteElevationModel(tiles, 0));
     }
 
     private GridPane paramsGrid() {
@@ -190,7 +218,13 @@ public final class Alpano extends Application {
         TextArea informationTextArea = new TextArea();
         informationTextArea.setEditable(false);
         informationTextArea.setPrefRowCount(2);
-        informationTextArea.textProperty().bind(infoText);
+        informationTextArea.textProperty()
+                .bind(Bindings.createStringBinding(
+                        () -> informationText(infoText.get(),
+                                computerBean.getMetrics(),
+                                computerBean.getError()),
+                        infoText, computerBean.metricsProperty(),
+                        computerBean.errorProperty()));
 
         /*
          * Place the fields
@@ -240,11 +274,27 @@ public final class Alpano extends Application {
 
         ScrollPane panoScrollPane = new ScrollPane(panoGroup);
 
-        StackPane panoPane = new StackPane(panoScrollPane, updateNotice());
+        StackPane panoPane = new StackPane(panoScrollPane, updateNotice(),
+                computeProgress());
 
         return panoPane;
     }
 
+    private ProgressBar computeProgress() {
+
+        ProgressBar progressBar = new ProgressBar();
+        progressBar.setPrefWidth(PROGRESS_BAR_WIDTH);
+        progressBar.progressProperty().bind(computerBean.progressProperty());
+
+        // only shown while a panorama is being computed
+        progressBar.visibleProperty()
+                .bind(computerBean.progressProperty().greaterThan(0)
+                        .and(computerBean.progressProperty().lessThan(1)));
+        progressBar.setMouseTransparent(true);
+
+        return progressBar;
+    }
+
     private StackPane updateNotice() {
 
         Text text = new Text(UPDATE_TEXT);
@@ -310,7 +360,12 @@ public final class Alpano extends Application {
         double longitude, latitude, elevation, distance, altitude, azimuth;
 
         PanoramaUserParameters computerParameters = computerBean
-                .getParameters();
+                .getComputedParameters();
+
+        // nothing is displayed yet
+        if (computerParameters == null) {
+            return;
+        }
 
         double resize = pow(2, computerParameters.superSamplingExponent());
 
@@ -346,10 +401,64 @@ public final class Alpano extends Application {
         infoText.set(s);
     }
 
+    // the information about the point under the mouse, followed by the
+    // error which made the last computation fail, if any, and the metrics of
+    // the computation of the displayed panorama
+    private static String informationText(String pointText,
+            PipelineMetrics.Snapshot metrics, RuntimeException error) {
+        StringBuilder b = new StringBuilder();
+        if (pointText != null) {
+            b.append(pointText);
+        }
+        if (error != null) {
+            if (b.length() > 0) {
+                b.append("\n\n");
+            }
+            b.append("Échec du calcul : ").append(error);
+        }
+        if (metrics != null) {
+            if (b.length() > 0) {
+                b.append("\n\n");
+            }
+            b.append(String.format(Locale.ROOT,
+                    "Recherche : %.0f ms   Bissection : %.0f ms   Pente : %.0f ms"
+                            + "\nÉtiquettes : %.0f ms   Dessin : %.0f ms"
+                            + "\nAltitudes lues : %d   Pas de recherche : %d"
+                            + "\nBissections : %d   Colonnes infinies : %d"
+                            + "\nSommets écartés : %d   Sommets testés : %d"
+                            + "   Sommets comparés : %d",
+                    millis(metrics, PipelineMetrics.Stage.RAY_SEARCH),
+                    millis(metrics, PipelineMetrics.Stage.BISECTION),
+                    millis(metrics, PipelineMetrics.Stage.SLOPE),
+                    millis(metrics, PipelineMetrics.Stage.LABELLING),
+                    millis(metrics, PipelineMetrics.Stage.RENDERING),
+                    metrics.count(Counter.ELEVATION_SAMPLES),
+                    metrics.count(Counter.ROOT_SEARCH_STEPS),
+                    metrics.count(Counter.BISECTION_ITERATIONS),
+                    metrics.count(Counter.COLUMNS_TERMINATED_AT_INFINITY),
+                    metrics.count(Counter.SUMMITS_CULLED),
+                    metrics.count(Counter.SUMMITS_TRACED),
+                    metrics.count(Counter.SUMMITS_DEPTH_TESTED)));
+        }
+        return b.toString();
+    }
+
+    private static double millis(PipelineMetrics.Snapshot metrics,
+            PipelineMetrics.Stage stage) {
+        return metrics.nanos(stage) / 1e6;
+    }
+
     private void onMouseClicked(MouseEvent e) throws Error {
 
-        double resize = pow(2,
-                computerBean.getParameters().superSamplingExponent());
+        PanoramaUserParameters computerParameters = computerBean
+                .getComputedParameters();
+
+        // nothing is displayed yet
+        if (computerParameters == null) {
+            return;
+        }
+
+        double resize = pow(2, computerParameters.superSamplingExponent());
 
         int x = (int) round(e.getX() * resize);
         int y = (int) round(e.getY() * resize);
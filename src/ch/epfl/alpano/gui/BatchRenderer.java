@@ -0,0 +1,430 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.toRadians;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.geom.AffineTransform;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.imageio.ImageIO;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.gui.Labelizer.SummitLabel;
+import ch.epfl.alpano.summit.Summit;
+
+/**
+ * Renders panoramas with their labels to PNG files, without JavaFX, the
+ * panoramas of several jobs being rendered at the same time by a bounded
+ * number of workers sharing the same DEM and summits.
+ * <p>
+ * A job file has one job per line: the PNG file to write, followed by the
+ * values of the {@link UserParameter}s, in their order and their units,
+ * separated by spaces. Empty lines and lines starting with # are ignored. For
+ * instance:
+ *
+ * <pre>
+ * niesen.png 76500 467300 600 180 110 300 2500 800 0
+ * </pre>
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+public final class BatchRenderer {
+
+    private final PanoramaComputer computer;
+    private final Labelizer labelizer;
+
+    /**
+     * Construct a renderer
+     *
+     * @param dem
+     *            the continuous elevation model shared by all the jobs
+     * @param summits
+     *            the summits shared by all the jobs
+     * @throws NullPointerException
+     *             if the dem or the summits are <code>null</code>
+     */
+    public BatchRenderer(ContinuousElevationModel dem, List<Summit> summits) {
+        computer = new PanoramaComputer(dem);
+        labelizer = new Labelizer(dem, summits);
+    }
+
+    /**
+     * A panorama to render in a PNG file
+     */
+    public static final class Job {
+        private final File output;
+        private final PanoramaUserParameters parameters;
+
+        /**
+         * Construct a job
+         *
+         * @param output
+         *            the PNG file to write
+         * @param parameters
+         *            the parameters of the panorama
+         * @throws NullPointerException
+         *             if the file or the parameters are <code>null</code>
+         */
+        public Job(File output, PanoramaUserParameters parameters) {
+            this.output = requireNonNull(output);
+            this.parameters = requireNonNull(parameters);
+        }
+
+        /**
+         * The PNG file to write
+         *
+         * @return the file
+         */
+        public File output() {
+            return output;
+        }
+
+        /**
+         * The parameters of the panorama
+         *
+         * @return the parameters
+         */
+        public PanoramaUserParameters parameters() {
+            return parameters;
+        }
+    }
+
+    /**
+     * The durations of the steps of a rendered job
+     */
+    public static final class Timing {
+        private final long computeNanos;
+        private final long labelNanos;
+        private final long renderNanos;
+        private final long writeNanos;
+
+        private Timing(long computeNanos, long labelNanos, long renderNanos,
+                long writeNanos) {
+            this.computeNanos = computeNanos;
+            this.labelNanos = labelNanos;
+            this.renderNanos = renderNanos;
+            this.writeNanos = writeNanos;
+        }
+
+        /**
+         * Time taken to compute the panorama
+         *
+         * @return the duration, in nanoseconds
+         */
+        public long computeNanos() {
+            return computeNanos;
+        }
+
+        /**
+         * Time taken to place the labels
+         *
+         * @return the duration, in nanoseconds
+         */
+        public long labelNanos() {
+            return labelNanos;
+        }
+
+        /**
+         * Time taken to paint the image and draw the labels
+         *
+         * @return the duration, in nanoseconds
+         */
+        public long renderNanos() {
+            return renderNanos;
+        }
+
+        /**
+         * Time taken to write the PNG file
+         *
+         * @return the duration, in nanoseconds
+         */
+        public long writeNanos() {
+            return writeNanos;
+        }
+
+        /**
+         * Total time taken by the job
+         *
+         * @return the duration, in nanoseconds
+         */
+        public long totalNanos() {
+            return computeNanos + labelNanos + renderNanos + writeNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "%.0f ms (compute %.0f, labels %.0f, render %.0f, write %.0f)",
+                    totalNanos() / 1e6, computeNanos / 1e6, labelNanos / 1e6,
+                    renderNanos / 1e6, writeNanos / 1e6);
+        }
+    }
+
+    /**
+     * Read the jobs of a job file
+     *
+     * @param file
+     *            the job file
+     * @return the jobs, in the order of the file, their PNG files being
+     *         relative to the working directory
+     * @throws IOException
+     *             if the file is unreadable or wrongly formatted
+     */
+    public static List<Job> readJobs(File file) throws IOException {
+        List<Job> jobs = new ArrayList<>();
+        List<String> lines = Files.readAllLines(file.toPath(), UTF_8);
+
+        UserParameter[] userParameters = UserParameter.values();
+        for (int i = 0; i < lines.size(); ++i) {
+            String line = lines.get(i).trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String[] fields = line.split("\\s+");
+            if (fields.length != userParameters.length + 1) {
+                throw new IOException("wrongly formatted line " + (i + 1));
+            }
+
+            Map<UserParameter, Integer> values = new EnumMap<>(
+                    UserParameter.class);
+            try {
+                for (int p = 0; p < userParameters.length; ++p) {
+                    values.put(userParameters[p],
+                            Integer.parseInt(fields[p + 1]));
+                }
+            } catch (NumberFormatException e) {
+                throw new IOException("wrongly formatted line " + (i + 1));
+            }
+
+            jobs.add(new Job(new File(fields[0]),
+                    new PanoramaUserParameters(values)));
+        }
+
+        return Collections.unmodifiableList(jobs);
+    }
+
+    /**
+     * Render a job: compute its panorama, label it and write it
+     *
+     * @param job
+     *            the job
+     * @return the durations of the steps of the job
+     * @throws IOException
+     *             if the PNG file cannot be written
+     */
+    public Timing render(Job job) throws IOException {
+        PanoramaParameters parameters = job.parameters().panoramaParameters();
+        PanoramaParameters display = job.parameters()
+                .panoramaDisplayParameters();
+
+        long start = System.nanoTime();
+        Panorama panorama = computer.computePanorama(parameters);
+        long computed = System.nanoTime();
+
+        List<SummitLabel> labels = labelizer.summitLabels(display, panorama,
+                Labelizer.DEFAULT_DEPTH_TOLERANCE);
+        long labeled = System.nanoTime();
+
+        BufferedImage image = image(panorama, display, labels);
+        long rendered = System.nanoTime();
+
+        if (!ImageIO.write(image, "png", job.output())) {
+            throw new IOException("no PNG writer");
+        }
+        long written = System.nanoTime();
+
+        return new Timing(computed - start, labeled - computed,
+                rendered - labeled, written - rendered);
+    }
+
+    /**
+     * Receiver of the outcomes of the jobs rendered by
+     * {@link BatchRenderer#renderAll}
+     */
+    public interface Listener {
+
+        /**
+         * Called when a job was rendered
+         *
+         * @param job
+         *            the job
+         * @param timing
+         *            the durations of the steps of the job
+         */
+        void rendered(Job job, Timing timing);
+
+        /**
+         * Called when a job failed
+         *
+         * @param job
+         *            the job
+         * @param cause
+         *            the reason of the failure
+         */
+        void failed(Job job, Throwable cause);
+    }
+
+    /**
+     * Render jobs, a bounded number of them at the same time, telling a
+     * listener of the outcome of each one as soon as it is done
+     *
+     * @param jobs
+     *            the jobs
+     * @param workers
+     *            the maximum number of jobs rendered at the same time
+     * @param listener
+     *            the listener, called from the calling thread in the order in
+     *            which the jobs are done
+     * @return the number of failed jobs
+     * @throws InterruptedException
+     *             if the thread is interrupted while waiting for the jobs
+     * @throws IllegalArgumentException
+     *             if the number of workers is not positive
+     * @throws NullPointerException
+     *             if the listener is <code>null</code>
+     */
+    public int renderAll(List<Job> jobs, int workers, Listener listener)
+            throws InterruptedException {
+        checkArgument(workers > 0);
+        requireNonNull(listener);
+
+        ExecutorService executor = Executors.newFixedThreadPool(workers);
+        try {
+            CompletionService<Timing> done = new ExecutorCompletionService<>(
+                    executor);
+            Map<Future<Timing>, Job> submitted = new HashMap<>();
+            for (Job job : jobs) {
+                submitted.put(done.submit(() -> render(job)), job);
+            }
+
+            int failures = 0;
+            for (int i = 0; i < jobs.size(); ++i) {
+                Future<Timing> timing = done.take();
+                Job job = submitted.get(timing);
+                try {
+                    listener.rendered(job, timing.get());
+                } catch (ExecutionException e) {
+                    ++failures;
+                    listener.failed(job, e.getCause());
+                }
+            }
+            return failures;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    // the image of a panorama at the size of the displayed one, with its
+    // labels, drawn like the nodes of the labels
+    static BufferedImage image(Panorama panorama,
+            PanoramaParameters display, List<SummitLabel> labels) {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+
+        BufferedImage computed = new BufferedImage(width, height,
+                BufferedImage.TYPE_INT_ARGB);
+        computed.setRGB(0, 0, width, height,
+                PanoramaRenderer.renderArgb(
+                        PanoramaRenderer.standardPainter(panorama), width,
+                        height, false),
+                0, width);
+
+        BufferedImage image = new BufferedImage(display.width(),
+                display.height(), BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION,
+                    RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.setRenderingHint(RenderingHints.KEY_ANTIALIASING,
+                    RenderingHints.VALUE_ANTIALIAS_ON);
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING,
+                    RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.drawImage(computed, 0, 0, display.width(), display.height(),
+                    null);
+
+            g.setColor(Color.BLACK);
+            AffineTransform identity = g.getTransform();
+            for (SummitLabel l : labels) {
+                g.drawLine(l.x(), l.lineTop(), l.x(), l.y());
+
+                g.translate(l.x(), l.textY());
+                g.rotate(toRadians(l.textRotation()));
+                g.drawString(l.text(), 0, 0);
+                g.setTransform(identity);
+            }
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    /**
+     * Render the jobs of a job file, with the DEM and the summits of Alpano
+     * read from the working directory
+     *
+     * @param args
+     *            the job file, optionally followed by the maximum number of
+     *            jobs rendered at the same time, the number of processors by
+     *            default
+     * @throws Exception
+     *             if the DEM, the summits or the job file cannot be read
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 2) {
+            System.err.println("usage: BatchRenderer <job file> [workers]");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+
+        List<Job> jobs = readJobs(new File(args[0]));
+        int workers = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+
+        List<Summit> summits = Alpano.loadSummits();
+        BatchRenderer renderer = new BatchRenderer(Alpano.createDem(),
+                summits);
+
+        long start = System.nanoTime();
+        int failures = renderer.renderAll(jobs, workers, new Listener() {
+            @Override
+            public void rendered(Job job, Timing timing) {
+                System.out.println(job.output() + ": " + timing);
+            }
+
+            @Override
+            public void failed(Job job, Throwable cause) {
+                System.err.println(job.output() + ": failed, " + cause);
+            }
+        });
+        System.out.printf(Locale.ROOT, "%d jobs, %d failed, in %.0f ms%n",
+                jobs.size(), failures, (System.nanoTime() - start) / 1e6);
+
+        System.exit(failures == 0 ? 0 : 1);
+    }
+}
@@ -0,0 +1,103 @@
+package ch.epfl.alpano.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+
+public class BatchRendererTest {
+
+    @Test
+    public void readJobsSkipsCommentsAndEmptyLines() throws IOException {
+        File f = tempFileWithLines("# nightly views", "", "niesen.png 76500 467300 600 180 110 300 2500 800 0", "  jura.png\t68087 470085 1380 162 27 300 2500 800 1  ");
+        List<BatchRenderer.Job> jobs = BatchRenderer.readJobs(f);
+        assertEquals(2, jobs.size());
+        assertEquals(new File("niesen.png"), jobs.get(0).output());
+        assertEquals(PredefinedPanoramas.NIESEN, jobs.get(0).parameters());
+        assertEquals(new File("jura.png"), jobs.get(1).output());
+        assertEquals(1380, jobs.get(1).parameters().observerElevation());
+        assertEquals(1, jobs.get(1).parameters().superSamplingExponent());
+    }
+
+    @Test
+    public void readJobsSanitizesTheParameters() throws IOException {
+        File f = tempFileWithLines("far.png 76500 467300 600 180 110 9999 2500 800 0");
+        assertEquals(600, BatchRenderer.readJobs(f).get(0).parameters().maxDistance());
+    }
+
+    @Test(expected = IOException.class)
+    public void readJobsFailsOnMissingParameter() throws IOException {
+        BatchRenderer.readJobs(tempFileWithLines("niesen.png 76500 467300 600 180 110 300 2500 800"));
+    }
+
+    @Test(expected = IOException.class)
+    public void readJobsFailsOnInvalidNumber() throws IOException {
+        BatchRenderer.readJobs(tempFileWithLines("niesen.png 76500 467300 600 180 110 300 2500 8OO 0"));
+    }
+
+    @Test
+    public void renderAllTellsTheListenerOfEachJob() throws Exception {
+        DiscreteElevationModel flat = new DiscreteElevationModel() {
+            @Override
+            public void close() { }
+
+            @Override
+            public Interval2D extent() {
+                return new Interval2D(new Interval1D(5 * 3600, 11 * 3600), new Interval1D(44 * 3600, 48 * 3600));
+            }
+
+            @Override
+            public double elevationSample(int x, int y) {
+                return 1000;
+            }
+        };
+        BatchRenderer renderer = new BatchRenderer(new ContinuousElevationModel(flat), Collections.emptyList());
+
+        File output = Files.createTempFile("job", ".png").toFile();
+        output.deleteOnExit();
+        PanoramaUserParameters p = PanoramaServer.parameters("observer_longitude=76500&observer_latitude=467300&observer_elevation=1500"
+                + "&center_azimuth=180&horizontal_field_of_view=60&max_distance=20&width=60&height=20&super_sampling_exponent=0");
+        BatchRenderer.Job rendered = new BatchRenderer.Job(output, p);
+        BatchRenderer.Job failed = new BatchRenderer.Job(new File(output, "not/a/directory.png"), p);
+
+        Map<BatchRenderer.Job, Object> outcomes = new HashMap<>();
+        int failures = renderer.renderAll(Arrays.asList(rendered, failed), 2, new BatchRenderer.Listener() {
+            @Override
+            public void rendered(BatchRenderer.Job job, BatchRenderer.Timing timing) {
+                outcomes.put(job, timing);
+            }
+
+            @Override
+            public void failed(BatchRenderer.Job job, Throwable cause) {
+                outcomes.put(job, cause);
+            }
+        });
+
+        assertEquals(1, failures);
+        assertTrue(outcomes.get(rendered) instanceof BatchRenderer.Timing);
+        assertTrue(outcomes.get(failed) instanceof IOException);
+        assertTrue(output.length() > 0);
+    }
+
+    private static File tempFileWithLines(String... lines) throws IOException {
+        File f = Files.createTempFile("jobs", ".txt").toFile();
+        f.deleteOnExit();
+        Files.write(f.toPath(), Arrays.asList(lines), UTF_8);
+        return f;
+    }
+}
@@ -2,9 +2,10 @@ package ch.epfl.alpano.gui;
 
 import java.util.function.DoubleUnaryOperator;
 import static java.lang.Math.*;
+import static java.util.Objects.requireNonNull;
 
-import ch.epfl.alpano.Math2;
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.gui.ChannelPipeline.Operation;
 
 /**
  * Functional interface representing a channel painter
@@ -26,6 +27,44 @@ public interface ChannelPainter {
      */
     public abstract float valueAt(int x, int y);
 
+    /**
+     * Give the values of the channel painter over a whole image. The painters
+     * obtained from a channel of a panorama and the operations of this
+     * interface compute them an operation at a time over arrays, instead of
+     * calling {@link #valueAt} for each point
+     * 
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @return the values, row after row
+     */
+    public default float[] values(int width, int height) {
+        float[] values = new float[width * height];
+        for (int y = 0; y < height; ++y) {
+            for (int x = 0; x < width; ++x) {
+                values[y * width + x] = valueAt(x, y);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Give the channel painter of a channel of a panorama
+     * 
+     * @param panorama
+     *            the panorama
+     * @param channel
+     *            the channel
+     * @return the channel painter giving the values of the channel
+     * @throws NullPointerException
+     *             if the panorama or the channel is <code>null</code>
+     */
+    public static ChannelPainter of(Panorama panorama,
+            Panorama.Channel channel) {
+        return ChannelPipeline.of(requireNonNull(panorama), channel);
+    }
+
     /**
      * Compute the Channel painter which will return a value with respect to
      * some inforamtion about the panorama
@@ -49,7 +88,7 @@ public interface ChannelPainter {
      * @return the channel painter with the addition
      */
     public default ChannelPainter add(float d) {
-        return (x, y) -> valueAt(x, y) + d;
+        return ChannelPipeline.of(this).then(Operation.ADD, d, null);
     }
 
     /**
@@ -60,7 +99,7 @@ public interface ChannelPainter {
      * @return the channel painter with the multiplication
      */
     public default ChannelPainter mul(float d) {
-        return (x, y) -> valueAt(x, y) * d;
+        return ChannelPipeline.of(this).then(Operation.MUL, d, null);
     }
 
     /**
@@ -71,7 +110,7 @@ public interface ChannelPainter {
      * @return the channel painter with the subtraction
      */
     public default ChannelPainter sub(float d) {
-        return (x, y) -> valueAt(x, y) - d;
+        return ChannelPipeline.of(this).then(Operation.SUB, d, null);
     }
 
     /**
@@ -82,7 +121,7 @@ public interface ChannelPainter {
      * @return the channel painter with the division
      */
     public default ChannelPainter div(float d) {
-        return (x, y) -> valueAt(x, y) / d;
+        return ChannelPipeline.of(this).then(Operation.DIV, d, null);
     }
 
     /**
@@ -93,7 +132,8 @@ public interface ChannelPainter {
      * @return the channel painter to which the function was applied
      */
     public default ChannelPainter map(DoubleUnaryOperator p) {
-        return (x, y) -> (float) p.applyAsDouble(valueAt(x, y));
+        return ChannelPipeline.of(this).then(Operation.MAP, 0,
+                requireNonNull(p));
     }
 
     /**
@@ -103,7 +143,7 @@ public interface ChannelPainter {
      * @return the channel painter to which the function (clamp) was applied
      */
     public default ChannelPainter clamp() {
-        return (x, y) -> max(0, min(valueAt(x, y), 1));
+        return ChannelPipeline.of(this).then(Operation.CLAMP, 0, null);
     }
 
     /**
@@ -112,8 +152,7 @@ public interface ChannelPainter {
      * @return the channel painter to which the function (cycle) was applied
      */
     public default ChannelPainter cycle() {
-        return (x, y) -> (float) Math2.floorMod(valueAt(x, y), 1);
-
+        return ChannelPipeline.of(this).then(Operation.CYCLE, 0, null);
     }
 
     /**
@@ -122,7 +161,7 @@ public interface ChannelPainter {
      * @return the channel painter to which the function (invert) was applied
      */
     public default ChannelPainter invert() {
-        return (x, y) -> 1 - valueAt(x, y);
+        return ChannelPipeline.of(this).then(Operation.INVERT, 0, null);
     }
 
 }
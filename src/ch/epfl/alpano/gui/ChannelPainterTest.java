@@ -0,0 +1,85 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.Panorama.Channel;
+import ch.epfl.alpano.PanoramaParameters;
+
+public class ChannelPainterTest {
+    private final static int W = 37, H = 23;
+
+    @Test
+    public void chainedOperationsGiveTheValuesOfNestedPainters() {
+        Panorama p = randomPanorama();
+        ChannelPainter chained = ChannelPainter.of(p, Channel.DISTANCE)
+                .div(100_000).cycle().mul(360).sub(12.5f).add(3).clamp()
+                .invert().map(v -> v * v);
+        for (int x = 0; x < W; ++x) {
+            for (int y = 0; y < H; ++y) {
+                float v = p.distanceAt(x, y) / 100_000f;
+                v = (float) Math2.floorMod(v, 1) * 360 - 12.5f + 3;
+                v = 1 - Math.max(0, Math.min(v, 1));
+                v = (float) ((double) v * v);
+                assertEquals(v, chained.valueAt(x, y), 0);
+            }
+        }
+    }
+
+    @Test
+    public void valuesAreTheOnesOfValueAt() {
+        Panorama p = randomPanorama();
+        ChannelPainter slope = ChannelPainter.of(p, Channel.SLOPE);
+        ChannelPainter lambda = p::elevationAt;
+        ChannelPainter[] painters = {
+                slope.mul(2).div((float) Math.PI).invert().mul(0.7f).add(0.3f),
+                ChannelPainter.of(p, Channel.DISTANCE).map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1),
+                lambda.div(1000).cycle(),
+                ChannelPainter.maxDistanceToNeighbors(p).sub(10).clamp() };
+        for (ChannelPainter painter : painters)
+            assertArrayEquals(valuesAt(painter), painter.values(W, H), 0);
+    }
+
+    @Test
+    public void channelIsACopy() {
+        Panorama p = randomPanorama();
+        float[] latitudes = p.channel(Channel.LATITUDE);
+        assertEquals(p.latitudeAt(3, 2), latitudes[3 + 2 * W], 0);
+        latitudes[0] = 42;
+        assertEquals(p.latitudeAt(3, 2), p.channel(Channel.LATITUDE)[3 + 2 * W], 0);
+        assertEquals(p.latitudeAt(0, 0), p.channel(Channel.LATITUDE)[0], 0);
+    }
+
+    private static float[] valuesAt(ChannelPainter painter) {
+        float[] values = new float[W * H];
+        for (int y = 0; y < H; ++y)
+            for (int x = 0; x < W; ++x)
+                values[x + y * W] = painter.valueAt(x, y);
+        return values;
+    }
+
+    private static Panorama randomPanorama() {
+        PanoramaParameters pp = new PanoramaParameters(new GeoPoint(0, 0), 1000, toRadians(10), toRadians(30), 100_000, W, H);
+        Panorama.Builder b = new Panorama.Builder(pp);
+        Random rng = newRandom();
+        for (int x = 0; x < W; ++x) {
+            for (int y = 0; y < H; ++y) {
+                if (rng.nextInt(5) != 0)
+                    b.setDistanceAt(x, y, rng.nextFloat() * 300_000);
+                b.setLatitudeAt(x, y, rng.nextFloat());
+                b.setElevationAt(x, y, rng.nextFloat() * 4000);
+                b.setSlopeAt(x, y, rng.nextFloat() * (float) Math.PI / 2);
+            }
+        }
+        return b.build();
+    }
+}
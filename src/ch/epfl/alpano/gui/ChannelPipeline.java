@@ -0,0 +1,218 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.util.Objects.requireNonNull;
+
+import java.util.Arrays;
+import java.util.function.DoubleUnaryOperator;
+
+import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.Panorama;
+
+/**
+ * A channel painter made of a source and of a sequence of operations, such as
+ * the ones of {@link ChannelPainter}. It gives the same values as the chain of
+ * painters it stands for, but its values over a whole image are computed an
+ * operation at a time, each operation being a simple loop over an array
+ *
+ * @author Louis Amaudruz (271808)
+ * @author Mathieu Chevalley (274698)
+ */
+final class ChannelPipeline implements ChannelPainter {
+
+    /**
+     * The operations of a pipeline
+     */
+    enum Operation {
+        ADD, MUL, SUB, DIV, MAP, CLAMP, CYCLE, INVERT
+    }
+
+    private final ChannelPainter source;
+    private final Panorama panorama;
+    private final Panorama.Channel channel;
+    private final Stage[] stages;
+
+    private ChannelPipeline(ChannelPainter source, Panorama panorama,
+            Panorama.Channel channel, Stage[] stages) {
+        this.source = source;
+        this.panorama = panorama;
+        this.channel = channel;
+        this.stages = stages;
+    }
+
+    /**
+     * Give the pipeline of a channel of a panorama, without operations
+     *
+     * @param panorama
+     *            the panorama
+     * @param channel
+     *            the channel
+     * @return the pipeline
+     * @throws NullPointerException
+     *             if the panorama or the channel is <code>null</code>
+     */
+    static ChannelPipeline of(Panorama panorama, Panorama.Channel channel) {
+        ChannelPainter source;
+        switch (requireNonNull(channel)) {
+        case DISTANCE:
+            source = panorama::distanceAt;
+            break;
+        case LONGITUDE:
+            source = panorama::longitudeAt;
+            break;
+        case LATITUDE:
+            source = panorama::latitudeAt;
+            break;
+        case ELEVATION:
+            source = panorama::elevationAt;
+            break;
+        default:
+            source = panorama::slopeAt;
+            break;
+        }
+        return new ChannelPipeline(source, panorama, channel, new Stage[0]);
+    }
+
+    /**
+     * Give a pipeline of a painter, the painter itself if it is already one
+     *
+     * @param painter
+     *            the painter
+     * @return the pipeline
+     */
+    static ChannelPipeline of(ChannelPainter painter) {
+        return painter instanceof ChannelPipeline ? (ChannelPipeline) painter
+                : new ChannelPipeline(painter, null, null, new Stage[0]);
+    }
+
+    /**
+     * Give the pipeline applying an operation after the ones of this one
+     *
+     * @param operation
+     *            the operation
+     * @param operand
+     *            the operand of the add, mul, sub and div operations
+     * @param function
+     *            the function of the map operation
+     * @return the new pipeline
+     */
+    ChannelPipeline then(Operation operation, float operand,
+            DoubleUnaryOperator function) {
+        Stage[] newStages = Arrays.copyOf(stages, stages.length + 1);
+        newStages[stages.length] = new Stage(operation, operand, function);
+        return new ChannelPipeline(source, panorama, channel, newStages);
+    }
+
+    @Override
+    public float valueAt(int x, int y) {
+        float value = source.valueAt(x, y);
+        for (Stage stage : stages) {
+            value = stage.apply(value);
+        }
+        return value;
+    }
+
+    @Override
+    public float[] values(int width, int height) {
+        float[] values;
+        if (channel != null) {
+            checkArgument(width == panorama.parameters().width()
+                    && height == panorama.parameters().height());
+            values = panorama.channel(channel);
+        } else {
+            values = source.values(width, height);
+        }
+
+        for (Stage stage : stages) {
+            stage.applyTo(values);
+        }
+        return values;
+    }
+
+    /**
+     * An operation with its operand
+     */
+    private static final class Stage {
+        private final Operation operation;
+        private final float operand;
+        private final DoubleUnaryOperator function;
+
+        private Stage(Operation operation, float operand,
+                DoubleUnaryOperator function) {
+            this.operation = operation;
+            this.operand = operand;
+            this.function = function;
+        }
+
+        // the operation applied to one value, as by the chained painters
+        private float apply(float v) {
+            switch (operation) {
+            case ADD:
+                return v + operand;
+            case MUL:
+                return v * operand;
+            case SUB:
+                return v - operand;
+            case DIV:
+                return v / operand;
+            case MAP:
+                return (float) function.applyAsDouble(v);
+            case CLAMP:
+                return max(0, min(v, 1));
+            case CYCLE:
+                return (float) Math2.floorMod(v, 1);
+            default:
+                return 1 - v;
+            }
+        }
+
+        // the operation applied to all the values, in a loop of its own
+        private void applyTo(float[] values) {
+            float d = operand;
+            switch (operation) {
+            case ADD:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] += d;
+                }
+                break;
+            case MUL:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] *= d;
+                }
+                break;
+            case SUB:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] -= d;
+                }
+                break;
+            case DIV:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] /= d;
+                }
+                break;
+            case MAP:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = (float) function.applyAsDouble(values[i]);
+                }
+                break;
+            case CLAMP:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = max(0, min(values[i], 1));
+                }
+                break;
+            case CYCLE:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = (float) Math2.floorMod(values[i], 1);
+                }
+                break;
+            default:
+                for (int i = 0; i < values.length; ++i) {
+                    values[i] = 1 - values[i];
+                }
+                break;
+            }
+        }
+    }
+}
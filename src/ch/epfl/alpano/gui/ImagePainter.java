@@ -1,5 +1,10 @@
 package ch.epfl.alpano.gui;
 
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.floor;
+
+import java.util.stream.IntStream;
+
 import javafx.scene.paint.Color;
 
 /**
@@ -24,6 +29,49 @@ public interface ImagePainter {
      */
     public abstract Color colorAt(int x, int y);
 
+    /**
+     * Give the color at a given index, packed in an int as 8 bits of opacity,
+     * red, green and blue, as the pixels of the images. The painters of this
+     * interface compute it without creating any color
+     * 
+     * @param x
+     *            the first index
+     * @param y
+     *            the second index
+     * @return the packed color at this index
+     */
+    public default int argbAt(int x, int y) {
+        Color c = colorAt(x, y);
+        return argb(c.getOpacity(), c.getRed(), c.getGreen(), c.getBlue());
+    }
+
+    /**
+     * Give the packed colors of a whole image, row after row. The painters of
+     * this interface first compute the values of their channels over the
+     * image, then combine them
+     * 
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @param parallel
+     *            true if the rows may be painted in parallel, the painter then
+     *            having to support being called from several threads
+     * @return the packed colors of the pixels
+     * @see ChannelPainter#values
+     */
+    public default int[] argbValues(int width, int height, boolean parallel) {
+        int[] pixels = new int[width * height];
+        IntStream rows = IntStream.range(0, height);
+        (parallel ? rows.parallel() : rows).forEach(y -> {
+            int offset = y * width;
+            for (int x = 0; x < width; ++x) {
+                pixels[offset + x] = argbAt(x, y);
+            }
+        });
+        return pixels;
+    }
+
     /**
      * Give an image painter given the hue, the saturation, the brightness and
      * the opacity channels at a point
@@ -42,8 +90,36 @@ public interface ImagePainter {
     public static ImagePainter hsb(ChannelPainter hue,
             ChannelPainter saturation, ChannelPainter brightness,
             ChannelPainter opacity) {
-        return (x, y) -> Color.hsb(hue.valueAt(x, y), saturation.valueAt(x, y),
-                brightness.valueAt(x, y), opacity.valueAt(x, y));
+        return new ImagePainter() {
+            @Override
+            public Color colorAt(int x, int y) {
+                return Color.hsb(hue.valueAt(x, y), saturation.valueAt(x, y),
+                        brightness.valueAt(x, y), opacity.valueAt(x, y));
+            }
+
+            @Override
+            public int argbAt(int x, int y) {
+                return hsbToArgb(hue.valueAt(x, y), saturation.valueAt(x, y),
+                        brightness.valueAt(x, y), opacity.valueAt(x, y));
+            }
+
+            @Override
+            public int[] argbValues(int width, int height, boolean parallel) {
+                float[] h = hue.values(width, height);
+                float[] s = saturation.values(width, height);
+                float[] b = brightness.values(width, height);
+                float[] o = opacity.values(width, height);
+
+                int[] pixels = new int[width * height];
+                IntStream rows = IntStream.range(0, height);
+                (parallel ? rows.parallel() : rows).forEach(y -> {
+                    for (int i = y * width; i < (y + 1) * width; ++i) {
+                        pixels[i] = hsbToArgb(h[i], s[i], b[i], o[i]);
+                    }
+                });
+                return pixels;
+            }
+        };
     }
 
     /**
@@ -58,6 +134,111 @@ public interface ImagePainter {
      */
     public static ImagePainter gray(ChannelPainter gray,
             ChannelPainter opacity) {
-        return (x, y) -> Color.gray(gray.valueAt(x, y), opacity.valueAt(x, y));
+        return new ImagePainter() {
+            @Override
+            public Color colorAt(int x, int y) {
+                return Color.gray(gray.valueAt(x, y), opacity.valueAt(x, y));
+            }
+
+            @Override
+            public int argbAt(int x, int y) {
+                double g = gray.valueAt(x, y);
+                double o = opacity.valueAt(x, y);
+                checkArgument(0 <= g && g <= 1 && 0 <= o && o <= 1);
+                return argb(o, g, g, g);
+            }
+
+            @Override
+            public int[] argbValues(int width, int height, boolean parallel) {
+                float[] g = gray.values(width, height);
+                float[] o = opacity.values(width, height);
+
+                int[] pixels = new int[width * height];
+                IntStream rows = IntStream.range(0, height);
+                (parallel ? rows.parallel() : rows).forEach(y -> {
+                    for (int i = y * width; i < (y + 1) * width; ++i) {
+                        checkArgument(0 <= g[i] && g[i] <= 1 && 0 <= o[i]
+                                && o[i] <= 1);
+                        pixels[i] = argb(o[i], g[i], g[i], g[i]);
+                    }
+                });
+                return pixels;
+            }
+        };
+    }
+
+    /**
+     * Convert a color given by its hue, saturation, brightness and opacity to
+     * a packed color, as {@link Color#hsb} followed by {@link #argbAt} would
+     * 
+     * @param hue
+     *            the hue, in degrees
+     * @param saturation
+     *            the saturation, between 0 and 1
+     * @param brightness
+     *            the brightness, between 0 and 1
+     * @param opacity
+     *            the opacity, between 0 and 1
+     * @return the packed color
+     * @throws IllegalArgumentException
+     *             if the saturation, the brightness or the opacity is not
+     *             between 0 and 1
+     */
+    public static int hsbToArgb(double hue, double saturation,
+            double brightness, double opacity) {
+        checkArgument(0 <= saturation && saturation <= 1 && 0 <= brightness
+                && brightness <= 1 && 0 <= opacity && opacity <= 1);
+
+        if (saturation == 0) {
+            return argb(opacity, brightness, brightness, brightness);
+        }
+
+        // position in the six sectors of the color wheel
+        double normalizedHue = (((hue % 360) + 360) % 360) / 360;
+        double h = (normalizedHue - floor(normalizedHue)) * 6;
+        double f = h - floor(h);
+        double p = brightness * (1 - saturation);
+        double q = brightness * (1 - saturation * f);
+        double t = brightness * (1 - (saturation * (1 - f)));
+
+        switch ((int) h) {
+        case 0:
+            return argb(opacity, brightness, t, p);
+        case 1:
+            return argb(opacity, q, brightness, p);
+        case 2:
+            return argb(opacity, p, brightness, t);
+        case 3:
+            return argb(opacity, p, q, brightness);
+        case 4:
+            return argb(opacity, t, p, brightness);
+        default:
+            return argb(opacity, brightness, p, q);
+        }
+    }
+
+    /**
+     * Pack the components of a color, between 0 and 1, in an int, the
+     * components being rounded to float as in {@link Color}
+     * 
+     * @param opacity
+     *            the opacity
+     * @param red
+     *            the red component
+     * @param green
+     *            the green component
+     * @param blue
+     *            the blue component
+     * @return the packed color
+     */
+    public static int argb(double opacity, double red, double green,
+            double blue) {
+        return component(opacity) << 24 | component(red) << 16
+                | component(green) << 8 | component(blue);
+    }
+
+    // a component as an 8 bits integer
+    private static int component(double value) {
+        return (int) Math.round((float) value * 255.0);
     }
 }
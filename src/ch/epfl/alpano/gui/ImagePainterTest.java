@@ -0,0 +1,72 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+import javafx.scene.paint.Color;
+
+public class ImagePainterTest {
+
+    @Test
+    public void hsbArgbIsTheOneOfItsColor() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS * 100; ++i) {
+            float h = rng.nextFloat() * 720 - 360, b = rng.nextFloat(), o = rng.nextFloat();
+            float s = i % 10 == 0 ? 0 : rng.nextFloat();
+            ImagePainter p = ImagePainter.hsb((x, y) -> h, (x, y) -> s, (x, y) -> b, (x, y) -> o);
+            assertEquals(argbOf(p.colorAt(0, 0)), p.argbAt(0, 0));
+        }
+    }
+
+    @Test
+    public void grayArgbIsTheOneOfItsColor() {
+        Random rng = newRandom();
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            float g = rng.nextFloat(), o = rng.nextFloat();
+            ImagePainter p = ImagePainter.gray((x, y) -> g, (x, y) -> o);
+            assertEquals(argbOf(p.colorAt(0, 0)), p.argbAt(0, 0));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void hsbArgbFailsWithTooLargeBrightness() {
+        ImagePainter.hsb((x, y) -> 0, (x, y) -> 1, (x, y) -> 1.5f, (x, y) -> 1).argbAt(0, 0);
+    }
+
+    @Test
+    public void renderArgbIsRowMajorInParallel() {
+        ImagePainter p = ImagePainter.gray((x, y) -> x / 10f, (x, y) -> y / 5f);
+        int[] expected = new int[11 * 6];
+        for (int y = 0; y < 6; ++y)
+            for (int x = 0; x < 11; ++x)
+                expected[y * 11 + x] = argbOf(p.colorAt(x, y));
+        assertArrayEquals(expected, PanoramaRenderer.renderArgb(p, 11, 6, true));
+    }
+
+    @Test
+    public void argbValuesAreTheOnesOfArgbAt() {
+        ChannelPainter h = (x, y) -> x * 10f - 50, s = (x, y) -> y / 6f, b = (x, y) -> (x + y) / 20f;
+        ImagePainter[] painters = { ImagePainter.hsb(h, s.clamp(), b.invert(), s), ImagePainter.gray(b, s) };
+        for (ImagePainter p : painters) {
+            int[] expected = new int[11 * 6];
+            for (int y = 0; y < 6; ++y)
+                for (int x = 0; x < 11; ++x)
+                    expected[y * 11 + x] = p.argbAt(x, y);
+            assertArrayEquals(expected, p.argbValues(11, 6, false));
+            assertArrayEquals(expected, p.argbValues(11, 6, true));
+        }
+    }
+
+    private static int argbOf(Color c) {
+        return (int) Math.round(c.getOpacity() * 255) << 24
+                | (int) Math.round(c.getRed() * 255) << 16
+                | (int) Math.round(c.getGreen() * 255) << 8
+                | (int) Math.round(c.getBlue() * 255);
+    }
+}
@@ -2,22 +2,31 @@ package ch.epfl.alpano.gui;
 
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import java.util.function.DoubleUnaryOperator;
 
 import ch.epfl.alpano.GeoPoint;
 import ch.epfl.alpano.Math2;
+import ch.epfl.alpano.Panorama;
 import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.PipelineMetrics;
+import ch.epfl.alpano.PipelineMetrics.Counter;
+import ch.epfl.alpano.PipelineMetrics.Stage;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.dem.ElevationProfile;
 import ch.epfl.alpano.summit.Summit;
+import ch.epfl.alpano.summit.SummitIndex;
 import javafx.scene.Node;
 import javafx.scene.shape.Line;
 import javafx.scene.text.Text;
 import javafx.scene.transform.Rotate;
 import javafx.scene.transform.Translate;
 
-import static ch.epfl.alpano.Math2.angularDistance;
 import static java.util.Objects.requireNonNull;
+import static ch.epfl.alpano.Preconditions.checkArgument;
 import static java.lang.Math.*;
 import static ch.epfl.alpano.PanoramaComputer.rayToGroundDistance;
 
@@ -34,21 +43,75 @@ import java.util.BitSet;
  */
 public final class Labelizer {
 
+    /**
+     * The distance by which the terrain may hide a summit for it to be
+     * labeled, when the visibility is checked against the distances of a
+     * panorama, in meters
+     */
+    public static final double DEFAULT_DEPTH_TOLERANCE = 200;
+
     private final ContinuousElevationModel cem;
-    private final List<Summit> summits;
+    private final SummitIndex summits;
+    private final boolean parallel;
+    private final PipelineMetrics metrics;
 
     /**
      * Construct the labelizer given a continuous elevation model and a list of
-     * all the summits
+     * all the summits, which are indexed by position
      * 
      * @param cem
      *            the continuous elevation model
      * @param summits
      *            the list of all the summits
+     * @see SummitIndex
      */
     public Labelizer(ContinuousElevationModel cem, List<Summit> summits) {
-        this.cem = requireNonNull(cem);
-        this.summits = Collections.unmodifiableList(requireNonNull(summits));
+        this(cem, summits, false);
+    }
+
+    /**
+     * Construct the labelizer given a continuous elevation model and a list of
+     * all the summits, which are indexed by position, possibly testing the
+     * visibility of the summits in parallel. The labels are the same in both
+     * cases
+     * 
+     * @param cem
+     *            the continuous elevation model
+     * @param summits
+     *            the list of all the summits
+     * @param parallel
+     *            true if the summits must be tested in parallel
+     * @see SummitIndex
+     */
+    public Labelizer(ContinuousElevationModel cem, List<Summit> summits,
+            boolean parallel) {
+        this(requireNonNull(cem), new SummitIndex(summits), parallel, null);
+    }
+
+    private Labelizer(ContinuousElevationModel cem, SummitIndex summits,
+            boolean parallel, PipelineMetrics metrics) {
+        this.cem = cem;
+        this.summits = summits;
+        this.parallel = parallel;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Give a labelizer recording the time spent placing the labels, the
+     * number of summits near enough and in the horizontal field of view but
+     * culled as above or below it,
+     * and the number of summits whose visibility was checked, by a ray or
+     * against the distances of the panorama. It places the same
+     * labels and shares the index of the summits of this one.
+     * 
+     * @param metrics
+     *            the recorder
+     * @return a labelizer recording in the recorder
+     * @throws NullPointerException
+     *             if the recorder is null
+     */
+    public Labelizer withMetrics(PipelineMetrics metrics) {
+        return new Labelizer(cem, summits, parallel, requireNonNull(metrics));
     }
 
     private static final int ABOVE_BORDER = 170;
@@ -66,9 +129,94 @@ public final class Labelizer {
      * @return the list of nodes
      */
     public List<Node> labels(PanoramaParameters parameters) {
+        return nodes(placeLabels(parameters, null, 0));
+    }
+
+    /**
+     * Construct a list of nodes representing all the summits that can be drawn
+     * given some constraints in a panorama, the visibility of the summits
+     * being decided by the distances of an already computed panorama instead
+     * of following the rays to the summits
+     * 
+     * @param parameters
+     *            the parameters of the panorama in which the labels are drawn
+     * @param panorama
+     *            the computed panorama, with the same observer and field of
+     *            view, possibly with more samples
+     * @param tolerance
+     *            the distance, in meters, by which the terrain seen in the
+     *            direction of a summit may be closer than the summit for it to
+     *            still be visible
+     * @return the list of nodes
+     * @throws NullPointerException
+     *             if the panorama is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the tolerance is negative
+     */
+    public List<Node> labels(PanoramaParameters parameters, Panorama panorama,
+            double tolerance) {
+        return nodes(summitLabels(parameters, panorama, tolerance));
+    }
+
+    /**
+     * Place the labels of the summits that can be drawn in a panorama, like
+     * {@link #labels(PanoramaParameters, Panorama, double)} but without
+     * creating their nodes, so that they can be drawn without JavaFX
+     * 
+     * @param parameters
+     *            the parameters of the panorama in which the labels are drawn
+     * @param panorama
+     *            the computed panorama, with the same observer and field of
+     *            view, possibly with more samples
+     * @param tolerance
+     *            the distance, in meters, by which the terrain seen in the
+     *            direction of a summit may be closer than the summit for it to
+     *            still be visible
+     * @return the labels, in the order of the nodes of their lines
+     * @throws NullPointerException
+     *             if the panorama is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the tolerance is negative
+     */
+    public List<SummitLabel> summitLabels(PanoramaParameters parameters,
+            Panorama panorama, double tolerance) {
+        checkArgument(tolerance >= 0);
+        return placeLabels(parameters, requireNonNull(panorama), tolerance);
+    }
 
-        final List<Node> labels = new ArrayList<>();
-        final List<VisibleSummit> visibleSummits = visibleSummits(parameters);
+    // place the labels of the summits visible in a panorama, using the
+    // distances of the depth panorama if it is not null
+    private List<SummitLabel> placeLabels(PanoramaParameters parameters,
+            Panorama depth, double tolerance) {
+        long start = metrics == null ? 0 : System.nanoTime();
+        List<SummitLabel> labels = summitLabels(parameters,
+                visibleSummits(parameters, depth, tolerance));
+        if (metrics != null) {
+            metrics.addNanos(Stage.LABELLING, System.nanoTime() - start);
+        }
+        return labels;
+    }
+
+    // the nodes drawing some labels: a line going up from the summit, and a
+    // text rotated at its top
+    private static List<Node> nodes(List<SummitLabel> summitLabels) {
+        List<Node> nodes = new ArrayList<>();
+        for (SummitLabel l : summitLabels) {
+            nodes.add(new Line(l.x(), l.lineTop(), l.x(), l.y()));
+
+            Text text = new Text(l.text());
+            text.getTransforms().addAll(new Translate(l.x(), l.textY()),
+                    new Rotate(l.textRotation()));
+            nodes.add(text);
+        }
+        return nodes;
+    }
+
+    // place the labels of the visible summits
+    private List<SummitLabel> summitLabels(PanoramaParameters parameters,
+            List<VisibleSummit> visibleSummits) {
+
+        final List<SummitLabel> labels = new ArrayList<>();
 
         Collections.sort(visibleSummits, (x, y) -> {
 
@@ -116,13 +264,7 @@ public final class Labelizer {
                     firstAcceptedSummit = false;
                 }
 
-                labels.add(
-                        new Line(x, minHeight + LINE_TO_SUMMIT_PIXELS, x, y));
-
-                Text text = new Text(s.toString());
-                text.getTransforms().addAll(new Translate(x, minHeight),
-                        new Rotate(TEXT_ROTATION));
-                labels.add(text);
+                labels.add(new SummitLabel(s.getSummit(), x, y, minHeight));
             }
         }
 
@@ -151,13 +293,12 @@ public final class Labelizer {
     private static final int ERROR_CONSTANT = 200;
     private static final int INTERVAL = 64;
 
-    // Construct a list of all the visible summits in a panorama
+    // Construct a list of all the visible summits in a panorama, using the
+    // distances of the depth panorama if it is not null
 
-    private List<VisibleSummit> visibleSummits(PanoramaParameters parameters) {
+    private List<VisibleSummit> visibleSummits(PanoramaParameters parameters,
+            Panorama depth, double tolerance) {
 
-        List<VisibleSummit> visibleSummits = new ArrayList<>();
-
-        
         GeoPoint observerPosition = parameters.observerPosition();
         int observerElevation = parameters.observerElevation();
         int maxDistance = parameters.maxDistance();
@@ -166,7 +307,17 @@ public final class Labelizer {
         double halfHorizontal = parameters.horizontalFieldOfView() / 2d;
         double halfVertical = parameters.verticalFieldOfView() / 2d;
 
-        for (Summit s : summits) {
+        // only the summits close enough and in the field of view are tested,
+        // the index skipping the cells out of the horizontal one, and the
+        // order of the summits being kept in parallel too
+        Stream<Summit> candidates = summits.summitsWithin(observerPosition,
+                maxDistance, centerAzimuth, halfHorizontal).stream();
+        LongAdder culled = new LongAdder();
+        LongAdder traced = new LongAdder();
+        LongAdder depthTested = new LongAdder();
+
+        List<VisibleSummit> visible = (parallel ? candidates.parallel()
+                : candidates).map(s -> {
 
             GeoPoint summitPosition = s.position();
 
@@ -180,25 +331,134 @@ public final class Labelizer {
                     .applyAsDouble(distance);
             double slope = -height / distance;
 
-            DoubleUnaryOperator f = rayToGroundDistance(profile,
-                    observerElevation, slope);
-
             double altitude = atan(slope);
 
-            if (distance <= maxDistance
-                    && abs(angularDistance(centerAzimuth,
-                            azimuth)) <= halfHorizontal
-                    && abs(altitude) <= halfVertical
-                    && Math2.firstIntervalContainingRoot(f, 0, distance,
-                            INTERVAL) >= distance - ERROR_CONSTANT) {
-                
+            if (abs(altitude) > halfVertical) {
+                culled.increment();
+                return null;
+            }
+            (depth == null ? traced : depthTested).increment();
+
+            if (depth == null ? isVisible(profile, observerElevation, slope,
+                    distance)
+                    : isVisible(depth, azimuth, altitude,
+                            distance / cos(altitude), tolerance)) {
+
                 int x = (int) round(parameters.xForAzimuth(azimuth));
                 int y = (int) round(parameters.yForAltitude(altitude));
-                visibleSummits.add(new VisibleSummit(s, x, y));
+                return new VisibleSummit(s, x, y);
             }
+            return null;
+        }).filter(Objects::nonNull).collect(Collectors.toList());
+
+        if (metrics != null) {
+            metrics.add(Counter.SUMMITS_CULLED, culled.sum());
+            metrics.add(Counter.SUMMITS_TRACED, traced.sum());
+            metrics.add(Counter.SUMMITS_DEPTH_TESTED, depthTested.sum());
+        }
+        return visible;
+    }
+
+    // check if a summit is visible by following the ray going to it
+    private static boolean isVisible(ElevationProfile profile,
+            int observerElevation, double slope, double distance) {
+        DoubleUnaryOperator f = rayToGroundDistance(profile,
+                observerElevation, slope);
+        return Math2.firstIntervalContainingRoot(f, 0, distance,
+                INTERVAL) >= distance - ERROR_CONSTANT;
+    }
+
+    // check if a summit is visible by comparing its distance along the ray
+    // going to it with the one of the terrain seen in its direction
+    private static boolean isVisible(Panorama depth, double azimuth,
+            double altitude, double rayDistance, double tolerance) {
+        PanoramaParameters p = depth.parameters();
+        int x = (int) round(p.xForAzimuth(azimuth));
+        int y = (int) round(p.yForAltitude(altitude));
+        return depth.distanceAt(x, y, 0) >= rayDistance - tolerance;
+    }
+
+    /**
+     * The label of a summit: a vertical line from the summit up to the text,
+     * which is rotated around its start
+     */
+    public static final class SummitLabel {
+
+        private final Summit summit;
+        private final int x;
+        private final int y;
+        private final int textY;
+
+        private SummitLabel(Summit summit, int x, int y, int textY) {
+            this.summit = summit;
+            this.x = x;
+            this.y = y;
+            this.textY = textY;
+        }
+
+        /**
+         * The labeled summit
+         * 
+         * @return the summit
+         */
+        public Summit summit() {
+            return summit;
+        }
+
+        /**
+         * Horizontal position of the summit and of the line
+         * 
+         * @return the x coordinate, in pixels
+         */
+        public int x() {
+            return x;
+        }
+
+        /**
+         * Vertical position of the summit, the bottom of the line
+         * 
+         * @return the y coordinate, in pixels
+         */
+        public int y() {
+            return y;
         }
 
-        return visibleSummits;
+        /**
+         * Vertical position of the top of the line
+         * 
+         * @return the y coordinate, in pixels
+         */
+        public int lineTop() {
+            return textY + LINE_TO_SUMMIT_PIXELS;
+        }
+
+        /**
+         * Vertical position of the start of the baseline of the text, the
+         * same for all the labels of a panorama
+         * 
+         * @return the y coordinate, in pixels
+         */
+        public int textY() {
+            return textY;
+        }
+
+        /**
+         * Rotation of the text around its start, clockwise
+         * 
+         * @return the angle, in degrees
+         */
+        public double textRotation() {
+            return TEXT_ROTATION;
+        }
+
+        /**
+         * The text of the label, the name and the elevation of the summit
+         * 
+         * @return the text
+         */
+        public String text() {
+            return summit.name() + " (" + summit.elevation() + ")";
+        }
     }
 
     // Ease the access to data that have already been calculated
@@ -225,10 +485,5 @@ public final class Labelizer {
         public Summit getSummit() {
             return summit;
         }
-
-        @Override
-        public String toString() {
-            return summit.name() + " (" + summit.elevation() + ")";
-        }
     }
 }
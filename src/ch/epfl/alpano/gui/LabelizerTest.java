@@ -1,16 +1,38 @@
 package ch.epfl.alpano.gui;
 
+import static java.lang.Math.cos;
+import static java.lang.Math.exp;
+import static java.lang.Math.sin;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 
+import org.junit.Test;
 
-
+import ch.epfl.alpano.Distance;
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.PipelineMetrics;
+import ch.epfl.alpano.PipelineMetrics.Counter;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
 import ch.epfl.alpano.dem.HgtDiscreteElevationModel;
 import ch.epfl.alpano.summit.GazetteerParser;
 import ch.epfl.alpano.summit.Summit;
 
 import javafx.scene.Node;
+import javafx.scene.shape.Line;
+import javafx.scene.text.Text;
+import javafx.scene.transform.Translate;
 
 
     import javafx.application.Application;
@@ -36,4 +58,174 @@ import javafx.scene.Node;
             System.out.println(l.size()/2);
             Platform.exit();
         }
+
+    // the observer of the synthetic panoramas, 1000 m above a plain at 500 m,
+    // looking north
+    private static final GeoPoint OBSERVER = new GeoPoint(toRadians(7), toRadians(46));
+    private static final PanoramaParameters PARAMETERS = new PanoramaParameters(OBSERVER, 1500, 0, toRadians(60), 40_000, 400, 400);
+
+    @Test
+    public void summitHiddenByARidgeIsDropped() {
+        Hill ridge = new Hill(0, 10_000, 3000, 2000);
+        Hill hidden = new Hill(0, 30_000, 1500, 500);
+        Hill seen = new Hill(20, 20_000, 1500, 500);
+        List<Summit> summits = Arrays.asList(hidden.summit("HIDDEN"), seen.summit("SEEN"));
+        Labelizer l = new Labelizer(new ContinuousElevationModel(new HillsDEM(ridge, hidden, seen)), summits);
+
+        assertEquals(Arrays.asList("SEEN (2000)"), texts(l.labels(PARAMETERS)));
+        assertEquals(Arrays.asList("SEEN (2000)"), texts(l.labels(PARAMETERS, depth(ridge, hidden, seen), Labelizer.DEFAULT_DEPTH_TOLERANCE)));
+    }
+
+    @Test
+    public void summitHiddenWithinTheToleranceIsKept() {
+        // a narrow peak about 300 m in front of the summit hides its top
+        Hill summit = new Hill(-10, 20_000, 1500, 500);
+        Hill peak = new Hill(-10, 19_750, 430, 80);
+        List<Summit> summits = Arrays.asList(summit.summit("BEHIND"));
+        Labelizer l = new Labelizer(new ContinuousElevationModel(new HillsDEM(summit, peak)), summits);
+        Panorama depth = depth(summit, peak);
+
+        assertEquals(Arrays.asList("BEHIND (2000)"), texts(l.labels(PARAMETERS, depth, 500)));
+        assertEquals(Arrays.asList(), texts(l.labels(PARAMETERS, depth, 100)));
+    }
+
+    @Test
+    public void depthVisibilityAgreesWithRaysWhenNothingIsInTheWay() {
+        Hill[] hills = { new Hill(-20, 12_000, 1500, 500), new Hill(-5, 18_000, 1400, 500),
+                new Hill(10, 25_000, 1600, 500), new Hill(25, 32_000, 1500, 500) };
+        List<Summit> summits = new ArrayList<>();
+        for (int i = 0; i < hills.length; ++i)
+            summits.add(hills[i].summit("HILL " + i));
+        Labelizer l = new Labelizer(new ContinuousElevationModel(new HillsDEM(hills)), summits);
+
+        List<String> rays = describe(l.labels(PARAMETERS));
+        assertEquals(2 * hills.length, rays.size());
+        assertEquals(rays, describe(l.labels(PARAMETERS, depth(hills), Labelizer.DEFAULT_DEPTH_TOLERANCE)));
+    }
+
+    @Test
+    public void parallelLabelsAreTheSequentialOnes() {
+        List<Hill> hills = new ArrayList<>();
+        List<Summit> summits = new ArrayList<>();
+        for (int a = -28, i = 0; a <= 28; a += 2, ++i) {
+            Hill h = new Hill(a, 8_000 + (i * 7_919) % 30_000, 600 + (i * 389) % 1500, 400);
+            hills.add(h);
+            summits.add(h.summit("HILL " + i));
+        }
+        DiscreteElevationModel dem = new HillsDEM(hills.toArray(new Hill[0]));
+        Labelizer sequential = new Labelizer(new ContinuousElevationModel(dem), summits);
+        Labelizer parallel = new Labelizer(new ContinuousElevationModel(dem), summits, true);
+        Panorama depth = depth(hills.toArray(new Hill[0]));
+
+        List<String> labels = describe(sequential.labels(PARAMETERS));
+        assertTrue(labels.size() > 4);
+        assertEquals(labels, describe(parallel.labels(PARAMETERS)));
+        assertEquals(describe(sequential.labels(PARAMETERS, depth, Labelizer.DEFAULT_DEPTH_TOLERANCE)),
+                describe(parallel.labels(PARAMETERS, depth, Labelizer.DEFAULT_DEPTH_TOLERANCE)));
+    }
+
+    @Test
+    public void metricsCountTheSummitsOfEachTest() {
+        Hill[] hills = { new Hill(0, 20_000, 1500, 500), new Hill(20, 20_000, 1500, 500),
+                new Hill(50, 20_000, 1500, 500), new Hill(0, 45_000, 1500, 500),
+                new Hill(-25, 1_000, 2000, 200) };
+        List<Summit> summits = new ArrayList<>();
+        for (int i = 0; i < hills.length; ++i)
+            summits.add(hills[i].summit("HILL " + i));
+        Labelizer l = new Labelizer(new ContinuousElevationModel(new HillsDEM(hills)), summits);
+
+        PipelineMetrics rays = new PipelineMetrics();
+        l.withMetrics(rays).labels(PARAMETERS);
+        PipelineMetrics.Snapshot s = rays.snapshot();
+        assertEquals(1, s.count(Counter.SUMMITS_CULLED));
+        assertEquals(2, s.count(Counter.SUMMITS_TRACED));
+        assertEquals(0, s.count(Counter.SUMMITS_DEPTH_TESTED));
+
+        PipelineMetrics depth = new PipelineMetrics();
+        l.withMetrics(depth).labels(PARAMETERS, depth(hills), Labelizer.DEFAULT_DEPTH_TOLERANCE);
+        s = depth.snapshot();
+        assertEquals(1, s.count(Counter.SUMMITS_CULLED));
+        assertEquals(0, s.count(Counter.SUMMITS_TRACED));
+        assertEquals(2, s.count(Counter.SUMMITS_DEPTH_TESTED));
+    }
+
+    // the computed panorama of some hills, seen from the observer
+    private static Panorama depth(Hill... hills) {
+        return new PanoramaComputer(new ContinuousElevationModel(new HillsDEM(hills))).computePanorama(PARAMETERS);
+    }
+
+    // the texts of the labels, in their order
+    private static List<String> texts(List<Node> labels) {
+        List<String> texts = new ArrayList<>();
+        for (Node n : labels)
+            if (n instanceof Text)
+                texts.add(((Text) n).getText());
+        return texts;
+    }
+
+    // the texts and positions of the labels, in their order
+    static List<String> describe(List<Node> labels) {
+        List<String> described = new ArrayList<>();
+        for (Node n : labels) {
+            if (n instanceof Line) {
+                Line line = (Line) n;
+                described.add("line " + line.getStartX() + " " + line.getStartY() + " " + line.getEndY());
+            } else {
+                Text text = (Text) n;
+                Translate t = (Translate) text.getTransforms().get(0);
+                described.add(text.getText() + " " + t.getX() + " " + t.getY());
+            }
+        }
+        return described;
+    }
+
+    // a round hill on the plain, at some azimuth and distance of the observer
+    static final class Hill {
+        private final double longitude, latitude, height, radius;
+
+        Hill(double azimuthDegrees, double distance, double height, double radius) {
+            double a = toRadians(azimuthDegrees);
+            this.latitude = OBSERVER.latitude() + distance * cos(a) / Distance.EARTH_RADIUS;
+            this.longitude = OBSERVER.longitude() + distance * sin(a) / (Distance.EARTH_RADIUS * cos(OBSERVER.latitude()));
+            this.height = height;
+            this.radius = radius;
+        }
+
+        // the summit at the top of the hill
+        Summit summit(String name) {
+            return new Summit(name, new GeoPoint(longitude, latitude), (int) (500 + height));
+        }
+
+        double elevationAt(double lon, double lat) {
+            double dx = (lon - longitude) * cos(latitude) * Distance.EARTH_RADIUS;
+            double dy = (lat - latitude) * Distance.EARTH_RADIUS;
+            if (Math.abs(dx) > 5 * radius || Math.abs(dy) > 5 * radius)
+                return 0;
+            return height * exp(-(dx * dx + dy * dy) / (radius * radius));
+        }
+    }
+
+    // a plain at 500 m with some hills, around the observer
+    static final class HillsDEM implements DiscreteElevationModel {
+        private final Hill[] hills;
+
+        HillsDEM(Hill... hills) { this.hills = hills; }
+
+        @Override
+        public void close() { }
+
+        @Override
+        public Interval2D extent() {
+            return new Interval2D(new Interval1D(6 * 3600, 8 * 3600), new Interval1D(45 * 3600, 47 * 3600));
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            double lon = toRadians(x / 3600d), lat = toRadians(y / 3600d);
+            double elevation = 500;
+            for (Hill h : hills)
+                elevation += h.elevationAt(lon, lat);
+            return elevation;
+        }
     }
+}
@@ -1,22 +1,36 @@
 package ch.epfl.alpano.gui;
 
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaCache;
 import ch.epfl.alpano.PanoramaComputer;
 import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.PipelineMetrics;
 import ch.epfl.alpano.dem.ContinuousElevationModel;
 import ch.epfl.alpano.summit.Summit;
 import javafx.beans.property.ObjectProperty;
+import javafx.beans.property.ReadOnlyDoubleProperty;
+import javafx.beans.property.ReadOnlyDoubleWrapper;
 import javafx.beans.property.ReadOnlyObjectProperty;
+import javafx.beans.property.ReadOnlyObjectWrapper;
 import javafx.beans.property.SimpleObjectProperty;
 import javafx.collections.FXCollections;
 import javafx.collections.ObservableList;
 import javafx.scene.Node;
 import javafx.scene.image.Image;
 
+import static javafx.application.Platform.runLater;
+
 /**
- * A bean that contains the proprieties of the panorama (image, labels...)
+ * A bean that contains the proprieties of the panorama (image, labels...),
+ * computed in the background and published on the JavaFX thread. A panorama
+ * which is not cached is published by stages, from a coarse one to the full
+ * resolution one, with their image and labels.
  * 
  * @author Mathieu Chevalley (274698)
  * @author Louis Amaudruz (271808)
@@ -25,14 +39,32 @@ import javafx.scene.image.Image;
 
 public final class PanoramaComputerBean {
 
+    // part of the maximum memory of the JVM taken by the cached panoramas
+    private static final int CACHE_MEMORY_DIVISOR = 4;
+    // step between the computed columns of the first stage of a panorama
+    private static final int COARSEST_STEP = 8;
+
     private final ObjectProperty<PanoramaUserParameters> parameters;
-    private final ObjectProperty<Image> image;
-    private final ObjectProperty<Panorama> panorama;
+    private final ReadOnlyObjectWrapper<PanoramaUserParameters> computedParameters;
+    private final ReadOnlyObjectWrapper<Image> image;
+    private final ReadOnlyObjectWrapper<Panorama> panorama;
+    private final ReadOnlyDoubleWrapper progress;
+    private final ReadOnlyObjectWrapper<PipelineMetrics.Snapshot> metrics;
+    private final ReadOnlyObjectWrapper<RuntimeException> error;
 
     private final ObservableList<Node> labels;
     private final ObservableList<Node> unmodifiableLabels;
     private final Labelizer labelizer;
     private final PanoramaComputer computer;
+    // only holds the panoramas of the computer, configured once
+    private final PanoramaCache cache;
+    private final ExecutorService executor;
+
+    // only accessed from the JavaFX thread
+    private Computation currentComputation;
+    // the last panorama computed at full resolution, whose columns can be
+    // reused, only accessed from the JavaFX thread
+    private Panorama completePanorama;
 
     /**
      * Construct a panorama computer bean given all the summits and a continuous
@@ -46,45 +78,175 @@ public final class PanoramaComputerBean {
     public PanoramaComputerBean(List<Summit> summits,
             ContinuousElevationModel dem) {
         computer = new PanoramaComputer(dem);
-        labelizer = new Labelizer(dem, summits);
+        cache = new PanoramaCache(
+                Runtime.getRuntime().maxMemory() / CACHE_MEMORY_DIVISOR);
+        labelizer = new Labelizer(dem, summits, true);
 
         parameters = new SimpleObjectProperty<>();
-        panorama = new SimpleObjectProperty<>();
-        image = new SimpleObjectProperty<>();
+        computedParameters = new ReadOnlyObjectWrapper<>();
+        panorama = new ReadOnlyObjectWrapper<>();
+        image = new ReadOnlyObjectWrapper<>();
+        progress = new ReadOnlyDoubleWrapper();
+        metrics = new ReadOnlyObjectWrapper<>();
+        error = new ReadOnlyObjectWrapper<>();
         labels = FXCollections.observableArrayList();
         unmodifiableLabels = FXCollections.unmodifiableObservableList(labels);
 
+        executor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "panorama-computer");
+            t.setDaemon(true);
+            return t;
+        });
+
         parameters.addListener(
                 (b, oldParameters, newParameters) -> compute(newParameters));
 
     }
 
-    // Compute all the values with the new parameters
+    // Compute all the values with the new parameters in the background,
+    // aborting the computation of the previous ones
     private void compute(PanoramaUserParameters newParam) {
 
-        PanoramaParameters parameters = newParam.panoramaParameters();
+        if (currentComputation != null) {
+            currentComputation.cancel();
+        }
+
+        progress.set(0);
+        error.set(null);
+        currentComputation = new Computation(newParam, completePanorama);
+        executor.execute(currentComputation);
+    }
+
+    // publish the results of a stage of a computation, unless a newer one
+    // was started
+    private void publish(Computation computation, Panorama newPanorama,
+            List<Node> newLabels, Image newImage,
+            PipelineMetrics.Snapshot newMetrics) {
 
-        panorama.set(computer.computePanorama(parameters));
+        if (computation == currentComputation) {
+            panorama.set(newPanorama);
+            labels.setAll(newLabels);
+            image.set(newImage);
+            metrics.set(newMetrics);
+            computedParameters.set(computation.parameters);
+        }
+    }
 
-        labels.setAll(labelizer.labels(newParam.panoramaDisplayParameters()));
+    // report the failure of a computation, unless a newer one was started:
+    // the last stage it published stays displayed, but no panorama is left to
+    // reuse as its columns may not match the displayed one anymore
+    private void fail(Computation computation, RuntimeException e) {
 
-        image.set(computeImage(getPanorama()));
+        if (computation == currentComputation) {
+            completePanorama = null;
+            progress.set(0);
+            error.set(e);
+        }
     }
 
-    // compute the new image
-    private Image computeImage(Panorama panorama) {
-        ChannelPainter dist = panorama::distanceAt;
-        ChannelPainter hue = dist.div(100_000).cycle().mul(360);
-        ChannelPainter s = dist.div(200_000).clamp().invert();
+    // A computation of all the values for some parameters, which can be
+    // cancelled between two columns of the panorama, reuses the columns of
+    // the displayed panorama, and publishes each stage of the panorama
+    private final class Computation
+            implements Runnable, PanoramaComputer.Monitor {
+
+        private final PanoramaUserParameters parameters;
+        private final Panorama previous;
+        private final AtomicInteger publishedPercent;
+        private volatile boolean cancelled;
+
+        private Computation(PanoramaUserParameters parameters,
+                Panorama previous) {
+            this.parameters = parameters;
+            this.previous = previous;
+            publishedPercent = new AtomicInteger();
+        }
+
+        private void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        @Override
+        public void columnComputed(int computedColumns, int totalColumns) {
+            // only publish each percent once to avoid flooding the JavaFX
+            // thread
+            int percent = 100 * computedColumns / totalColumns;
+            int published = publishedPercent.get();
+            if (percent > published
+                    && publishedPercent.compareAndSet(published, percent)) {
+                runLater(() -> {
+                    if (this == currentComputation) {
+                        progress.set(percent / 100d);
+                    }
+                });
+            }
+        }
+
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+
+            try {
+                PipelineMetrics metrics = new PipelineMetrics();
+                PanoramaParameters panoramaParameters = parameters
+                        .panoramaParameters();
+                Panorama newPanorama = cache.get(panoramaParameters);
+                if (newPanorama == null) {
+                    newPanorama = computer.withMetrics(metrics)
+                            .computePanoramaProgressively(panoramaParameters,
+                                    previous, COARSEST_STEP, true, this,
+                                    stage -> publishStage(stage, metrics));
+                    cache.put(newPanorama);
+                } else {
+                    publishStage(newPanorama, metrics);
+                }
+
+                // after the last stage
+                Panorama computedPanorama = newPanorama;
+                runLater(() -> {
+                    if (this == currentComputation) {
+                        completePanorama = computedPanorama;
+                        progress.set(1);
+                    }
+                });
+            } catch (CancellationException e) {
+                // newer parameters were given, nothing to publish
+            } catch (RuntimeException e) {
+                runLater(() -> fail(this, e));
+            }
+        }
+
+        // label and paint a stage of the panorama, and publish it on the
+        // JavaFX thread
+        private void publishStage(Panorama stage, PipelineMetrics metrics) {
+            if (cancelled) {
+                throw new CancellationException();
+            }
+
+            List<Node> newLabels = labelizer.withMetrics(metrics).labels(
+                    parameters.panoramaDisplayParameters(), stage,
+                    Labelizer.DEFAULT_DEPTH_TOLERANCE);
+            Image newImage = computeImage(stage, metrics);
 
-        ChannelPainter slo = panorama::slopeAt;
-        ChannelPainter b = slo.mul(2).div((float) Math.PI).invert().mul(0.7f)
-                .add(0.3f);
-        ChannelPainter o = (x,
-                y) -> dist.valueAt(x, y) == Float.POSITIVE_INFINITY ? 0 : 1;
+            if (!cancelled) {
+                PipelineMetrics.Snapshot newMetrics = metrics.snapshot();
+                runLater(() -> publish(this, stage, newLabels, newImage,
+                        newMetrics));
+            }
+        }
+    }
 
-        ImagePainter painter = ImagePainter.hsb(hue, s, b, o);
-        return PanoramaRenderer.renderPanorama(panorama, painter);
+    // compute the new image
+    private Image computeImage(Panorama panorama, PipelineMetrics metrics) {
+        return PanoramaRenderer.renderPanorama(panorama,
+                PanoramaRenderer.standardPainter(panorama), true, metrics);
     }
 
     /**
@@ -115,13 +277,70 @@ public final class PanoramaComputerBean {
         parametersProperty().set(newParameters);
     }
 
+    /**
+     * The property of the parameters of the displayed panorama, which lag
+     * behind the parameters while a computation is in progress
+     * 
+     * @return the property
+     */
+    public ReadOnlyObjectProperty<PanoramaUserParameters> computedParametersProperty() {
+        return computedParameters.getReadOnlyProperty();
+    }
+
+    /**
+     * The parameters of the displayed panorama
+     * 
+     * @return the parameters
+     */
+    public PanoramaUserParameters getComputedParameters() {
+        return computedParametersProperty().get();
+    }
+
+    /**
+     * The property of the progress of the computation, between 0 and 1
+     * 
+     * @return the property
+     */
+    public ReadOnlyDoubleProperty progressProperty() {
+        return progress.getReadOnlyProperty();
+    }
+
+    /**
+     * The progress of the computation
+     * 
+     * @return the progress, between 0 and 1
+     */
+    public double getProgress() {
+        return progressProperty().get();
+    }
+
+    /**
+     * The property of the error which made the last computation fail, reset
+     * to <code>null</code> when a new computation starts
+     * 
+     * @return the property
+     */
+    public ReadOnlyObjectProperty<RuntimeException> errorProperty() {
+        return error.getReadOnlyProperty();
+    }
+
+    /**
+     * The error which made the last computation fail
+     * 
+     * @return the error, <code>null</code> if the last computation did not
+     *         fail
+     */
+    public RuntimeException getError() {
+        return errorProperty().get();
+    }
+
     /**
      * The property of the panorama
      * 
      * @return the property
      */
     public ReadOnlyObjectProperty<Panorama> panoramaProperty() {
-        return panorama;
+        return panorama.getReadOnlyProperty();
     }
 
     /**
@@ -139,7 +358,7 @@ public final class PanoramaComputerBean {
      * @return the property
      */
     public ReadOnlyObjectProperty<Image> imageProperty() {
-        return image;
+        return image.getReadOnlyProperty();
     }
 
     /**
@@ -151,6 +370,44 @@ public final class PanoramaComputerBean {
         return imageProperty().get();
     }
 
+    /**
+     * The property of the metrics of the computation of the displayed
+     * panorama, whose stages of computation are empty if it was cached
+     * 
+     * @return the property
+     */
+    public ReadOnlyObjectProperty<PipelineMetrics.Snapshot> metricsProperty() {
+        return metrics.getReadOnlyProperty();
+    }
+
+    /**
+     * The metrics of the computation of the displayed panorama
+     * 
+     * @return the metrics, <code>null</code> if nothing is displayed yet
+     */
+    public PipelineMetrics.Snapshot getMetrics() {
+        return metricsProperty().get();
+    }
+
+    /**
+     * Number of parameters whose panorama was found in the cache, and not
+     * computed
+     * 
+     * @return the number of cache hits
+     */
+    public long cacheHits() {
+        return cache.hits();
+    }
+
+    /**
+     * Number of parameters whose panorama had to be computed
+     * 
+     * @return the number of cache misses
+     */
+    public long cacheMisses() {
+        return cache.misses();
+    }
+
     /**
      * An observable list of the labels
      * 
@@ -1,9 +1,14 @@
 package ch.epfl.alpano.gui;
 
+import static java.util.Objects.requireNonNull;
+
 import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.Panorama.Channel;
+import ch.epfl.alpano.PipelineMetrics;
+import ch.epfl.alpano.PipelineMetrics.Stage;
 import javafx.scene.image.Image;
-import javafx.scene.image.PixelWriter;
-import javafx.scene.image.WritableImage;;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
 
 /**
  * Tool class to render a panorama in an image
@@ -26,18 +31,104 @@ public interface PanoramaRenderer {
      */
     public static Image renderPanorama(Panorama panorama,
             ImagePainter painter) {
+        return renderPanorama(panorama, painter, false);
+    }
 
-        WritableImage image = new WritableImage(panorama.parameters().width(),
-                panorama.parameters().height());
-        PixelWriter writer = image.getPixelWriter();
+    /**
+     * Render a panorama in an image, the pixels being computed by rows,
+     * possibly in parallel, and written to the image at once
+     * 
+     * @param panorama
+     *            the panorama to be rendered
+     * @param painter
+     *            the image painter, which must support being called from
+     *            several threads if parallel is true
+     * @param parallel
+     *            true if the rows must be painted in parallel
+     * @return the resulting image
+     * @see javafx.scene.image#Image
+     */
+    public static Image renderPanorama(Panorama panorama, ImagePainter painter,
+            boolean parallel) {
+        int width = panorama.parameters().width();
+        int height = panorama.parameters().height();
+
+        WritableImage image = new WritableImage(width, height);
+        image.getPixelWriter().setPixels(0, 0, width, height,
+                PixelFormat.getIntArgbInstance(),
+                renderArgb(painter, width, height, parallel), 0, width);
 
-        // drawing of the image using the painter
-        for (int x = 0; x < image.getWidth(); x++) {
-            for (int y = 0; y < image.getHeight(); y++) {
-                writer.setColor(x, y, painter.colorAt(x, y));
-            }
-        }
+        return image;
+    }
 
+    /**
+     * Render a panorama in an image like
+     * {@link #renderPanorama(Panorama, ImagePainter, boolean)}, recording the
+     * time taken
+     * 
+     * @param panorama
+     *            the panorama to be rendered
+     * @param painter
+     *            the image painter, which must support being called from
+     *            several threads if parallel is true
+     * @param parallel
+     *            true if the rows must be painted in parallel
+     * @param metrics
+     *            the recorder of the time taken
+     * @return the resulting image
+     * @throws NullPointerException
+     *             if the recorder is null
+     */
+    public static Image renderPanorama(Panorama panorama, ImagePainter painter,
+            boolean parallel, PipelineMetrics metrics) {
+        requireNonNull(metrics);
+        long start = System.nanoTime();
+        Image image = renderPanorama(panorama, painter, parallel);
+        metrics.addNanos(Stage.RENDERING, System.nanoTime() - start);
         return image;
     }
+
+    /**
+     * The painter of the panoramas of Alpano: the hue and the saturation
+     * give the distance, the brightness the slope, and the sky is
+     * transparent
+     * 
+     * @param panorama
+     *            the panorama
+     * @return the painter of the panorama
+     */
+    public static ImagePainter standardPainter(Panorama panorama) {
+        ChannelPainter dist = ChannelPainter.of(panorama, Channel.DISTANCE);
+        ChannelPainter hue = dist.div(100_000).cycle().mul(360);
+        ChannelPainter s = dist.div(200_000).clamp().invert();
+
+        ChannelPainter slo = ChannelPainter.of(panorama, Channel.SLOPE);
+        ChannelPainter b = slo.mul(2).div((float) Math.PI).invert().mul(0.7f)
+                .add(0.3f);
+        ChannelPainter o = dist
+                .map(d -> d == Float.POSITIVE_INFINITY ? 0 : 1);
+
+        return ImagePainter.hsb(hue, s, b, o);
+    }
+
+    /**
+     * Paint the pixels of an image as packed colors, without creating any
+     * color if the painter does not
+     * 
+     * @param painter
+     *            the image painter, which must support being called from
+     *            several threads if parallel is true
+     * @param width
+     *            the width of the image
+     * @param height
+     *            the height of the image
+     * @param parallel
+     *            true if the rows must be painted in parallel
+     * @return the packed colors of the pixels, row after row
+     * @see ImagePainter#argbAt
+     */
+    public static int[] renderArgb(ImagePainter painter, int width, int height,
+            boolean parallel) {
+        return painter.argbValues(width, height, parallel);
+    }
 }
@@ -0,0 +1,625 @@
+package ch.epfl.alpano.gui;
+
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+import javax.imageio.ImageIO;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import ch.epfl.alpano.Panorama;
+import ch.epfl.alpano.PanoramaComputer;
+import ch.epfl.alpano.PanoramaParameters;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.gui.Labelizer.SummitLabel;
+import ch.epfl.alpano.summit.Summit;
+
+/**
+ * An HTTP server rendering panoramas, sharing the same DEM and summits
+ * between all its requests. It answers to:
+ * <ul>
+ * <li><code>GET /panorama.png</code> with the image of a panorama and its
+ * labels,</li>
+ * <li><code>GET /labels.json</code> with its labels, as an array of objects
+ * giving the name and elevation of the summit, its position and the one of
+ * the text of its label.</li>
+ * </ul>
+ * The parameters of the panorama are given in the query, named after the
+ * {@link UserParameter}s in lower case, in their units, for instance
+ * <code>?observer_longitude=76500&amp;observer_latitude=467300&amp;...</code>
+ * <p>
+ * The concurrent requests of the same panorama share the same rendering, and
+ * the last renderings done are kept in a cache whose size is bounded, so that
+ * the image and the labels of a panorama are rendered once. The renderings
+ * are done by a fixed number of workers, the waiting ones being kept in a
+ * bounded queue, and the requests are answered by a fixed number of
+ * handlers, the waiting ones being kept in a bounded queue too: when one of
+ * them is full, the server answers 503 (service unavailable) instead of
+ * taking more work.
+ * <p>
+ * A stopped server may be started again, the renderings done being kept.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ */
+public final class PanoramaServer {
+
+    private static final int OK = 200;
+    private static final int BAD_REQUEST = 400;
+    private static final int NOT_FOUND = 404;
+    private static final int METHOD_NOT_ALLOWED = 405;
+    private static final int INTERNAL_ERROR = 500;
+    private static final int UNAVAILABLE = 503;
+    // seconds after which a client should retry a request refused for lack
+    // of capacity
+    private static final int RETRY_AFTER = 1;
+    // bytes of the renderings kept by default once done
+    private static final long DEFAULT_CACHE_BYTES = 64L << 20;
+
+    private final PanoramaComputer computer;
+    private final Labelizer labelizer;
+    private final int workerCount;
+    private final int queueCapacity;
+    // replaced when the server is stopped, read without the lock of the
+    // server by the renderings
+    private volatile ThreadPoolExecutor workers;
+    // the renderings in progress, and the lock of the renderings done
+    private final Map<PanoramaUserParameters, CompletableFuture<Rendering>> inFlight;
+    private final long maxCacheBytes;
+    // in access order, the least recently used first
+    private final LinkedHashMap<PanoramaUserParameters, Rendering> rendered;
+    private long cacheBytes;
+    private final AtomicLong renderings;
+    private final AtomicInteger pendingRequests;
+
+    private HttpServer server;
+    private ThreadPoolExecutor handlers;
+
+    /**
+     * Construct a server, not started yet, keeping 64 MB of renderings once
+     * done
+     *
+     * @param dem
+     *            the continuous elevation model shared by all the requests
+     * @param summits
+     *            the summits shared by all the requests
+     * @param workers
+     *            the number of panoramas rendered at the same time
+     * @param queueCapacity
+     *            the number of renderings that may wait for a worker
+     * @throws NullPointerException
+     *             if the dem or the summits are <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the number of workers is not positive or if the capacity
+     *             of the queue is negative
+     */
+    public PanoramaServer(ContinuousElevationModel dem, List<Summit> summits,
+            int workers, int queueCapacity) {
+        this(dem, summits, workers, queueCapacity, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Construct a server, not started yet
+     *
+     * @param dem
+     *            the continuous elevation model shared by all the requests
+     * @param summits
+     *            the summits shared by all the requests
+     * @param workers
+     *            the number of panoramas rendered at the same time
+     * @param queueCapacity
+     *            the number of renderings that may wait for a worker
+     * @param cacheBytes
+     *            the maximum number of bytes taken by the images and the
+     *            labels of the renderings kept once done, the least recently
+     *            used ones being evicted first
+     * @throws NullPointerException
+     *             if the dem or the summits are <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the number of workers is not positive or if the capacity
+     *             of the queue or of the cache is negative
+     */
+    public PanoramaServer(ContinuousElevationModel dem, List<Summit> summits,
+            int workers, int queueCapacity, long cacheBytes) {
+        checkArgument(workers > 0 && queueCapacity >= 0 && cacheBytes >= 0);
+
+        this.computer = new PanoramaComputer(dem);
+        this.labelizer = new Labelizer(dem, summits);
+        this.workerCount = workers;
+        this.queueCapacity = queueCapacity;
+        this.workers = newWorkers();
+        this.inFlight = new HashMap<>();
+        this.maxCacheBytes = cacheBytes;
+        this.rendered = new LinkedHashMap<>(16, 0.75f, true);
+        this.renderings = new AtomicLong();
+        this.pendingRequests = new AtomicInteger();
+    }
+
+    // the workers rendering the panoramas, whose threads are only created
+    // when there are renderings to do
+    private ThreadPoolExecutor newWorkers() {
+        return new ThreadPoolExecutor(workerCount, workerCount, 0,
+                TimeUnit.MILLISECONDS,
+                queueCapacity == 0 ? new SynchronousQueue<>()
+                        : new ArrayBlockingQueue<>(queueCapacity),
+                r -> {
+                    Thread t = new Thread(r, "panorama-worker");
+                    t.setDaemon(true);
+                    return t;
+                });
+    }
+
+    /**
+     * Start answering to requests
+     *
+     * @param address
+     *            the address to listen to, whose port may be 0 to choose any
+     *            free one
+     * @throws IOException
+     *             if the server cannot listen to the address
+     * @throws IllegalStateException
+     *             if the server was already started
+     */
+    public synchronized void start(InetSocketAddress address)
+            throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("already started");
+        }
+
+        // the handlers mostly wait for the workers: enough of them to fill
+        // the queue of the workers, and as many waiting ones, the others
+        // being refused by the thread of the server itself
+        int handlerCount = workerCount + queueCapacity + 1;
+        handlers = new ThreadPoolExecutor(handlerCount, handlerCount, 0,
+                TimeUnit.MILLISECONDS, new ArrayBlockingQueue<>(handlerCount),
+                r -> {
+                    Thread t = new Thread(r, "panorama-handler");
+                    t.setDaemon(true);
+                    return t;
+                }, (r, executor) -> ((Request) r).reject());
+
+        HttpServer created = HttpServer.create(address, 0);
+        ThreadPoolExecutor createdHandlers = handlers;
+        created.createContext("/panorama.png", e -> accept(createdHandlers,
+                new Request(e, r -> r.png, "image/png")));
+        created.createContext("/labels.json", e -> accept(createdHandlers,
+                new Request(e, r -> r.labels.getBytes(UTF_8),
+                        "application/json")));
+        created.start();
+        server = created;
+    }
+
+    // give a request to a handler, the request being rejected if none is
+    // available
+    private void accept(ThreadPoolExecutor handlers, Request request) {
+        pendingRequests.incrementAndGet();
+        handlers.execute(request);
+    }
+
+    /**
+     * The port the server listens to
+     *
+     * @return the port
+     * @throws IllegalStateException
+     *             if the server is not started
+     */
+    public synchronized int port() {
+        if (server == null) {
+            throw new IllegalStateException("not started");
+        }
+        return server.getAddress().getPort();
+    }
+
+    /**
+     * Stop the server, abandoning the renderings in progress and answering
+     * 503 to the requests waiting for them. It may then be started again.
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(0);
+            for (Runnable waiting : handlers.shutdownNow()) {
+                ((Request) waiting).reject();
+            }
+            server = null;
+            handlers = null;
+        }
+
+        ThreadPoolExecutor stopped = workers;
+        workers = newWorkers();
+        stopped.shutdownNow();
+        // the renderings left in the queue will never be done
+        synchronized (inFlight) {
+            for (CompletableFuture<Rendering> f : inFlight.values()) {
+                f.completeExceptionally(
+                        new RejectedExecutionException("stopped"));
+            }
+            inFlight.clear();
+        }
+    }
+
+    /**
+     * Number of requests being answered or waiting for a handler
+     *
+     * @return the number of requests
+     */
+    int pendingRequests() {
+        return pendingRequests.get();
+    }
+
+    /**
+     * Number of renderings done or in progress, the requests of the same
+     * panorama sharing a rendering counting as one
+     *
+     * @return the number of renderings
+     */
+    public long renderings() {
+        return renderings.get();
+    }
+
+    /**
+     * Give the rendering of a panorama, shared with the concurrent requests
+     * of the same panorama, or the cached one if it was done before
+     *
+     * @param parameters
+     *            the parameters of the panorama
+     * @return the future rendering
+     * @throws RejectedExecutionException
+     *             if the rendering cannot be queued
+     */
+    CompletableFuture<Rendering> rendering(PanoramaUserParameters parameters) {
+        requireNonNull(parameters);
+        CompletableFuture<Rendering> created = new CompletableFuture<>();
+        synchronized (inFlight) {
+            Rendering done = rendered.get(parameters);
+            if (done != null) {
+                return CompletableFuture.completedFuture(done);
+            }
+            CompletableFuture<Rendering> existing = inFlight
+                    .putIfAbsent(parameters, created);
+            if (existing != null) {
+                return existing;
+            }
+        }
+
+        try {
+            // the rendering moves from the renderings in progress to the
+            // cache before being completed, so that a request is always
+            // given the one of the other
+            workers.execute(() -> {
+                Rendering r = null;
+                Throwable failure = null;
+                try {
+                    r = render(parameters);
+                } catch (Throwable t) {
+                    failure = t;
+                }
+                synchronized (inFlight) {
+                    // unless the server was stopped in the meantime
+                    inFlight.remove(parameters, created);
+                    if (failure == null) {
+                        cache(parameters, r);
+                    }
+                }
+                if (failure == null) {
+                    created.complete(r);
+                } else {
+                    created.completeExceptionally(failure);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            // the requests sharing it must be refused too
+            synchronized (inFlight) {
+                inFlight.remove(parameters, created);
+            }
+            created.completeExceptionally(e);
+            throw e;
+        }
+        renderings.incrementAndGet();
+        return created;
+    }
+
+    // keep a rendering done, evicting the least recently used ones if
+    // needed, a rendering larger than the cache being not kept. The lock of
+    // the renderings must be held.
+    private void cache(PanoramaUserParameters parameters,
+            Rendering rendering) {
+        long size = rendering.sizeInBytes();
+        if (size > maxCacheBytes) {
+            return;
+        }
+
+        Iterator<Rendering> it = rendered.values().iterator();
+        while (cacheBytes + size > maxCacheBytes) {
+            cacheBytes -= it.next().sizeInBytes();
+            it.remove();
+        }
+        rendered.put(parameters, rendering);
+        cacheBytes += size;
+    }
+
+    // compute, label and paint a panorama
+    private Rendering render(PanoramaUserParameters parameters)
+            throws IOException {
+        PanoramaParameters display = parameters.panoramaDisplayParameters();
+
+        Panorama panorama = computer
+                .computePanorama(parameters.panoramaParameters());
+        List<SummitLabel> labels = labelizer.summitLabels(display, panorama,
+                Labelizer.DEFAULT_DEPTH_TOLERANCE);
+
+        ByteArrayOutputStream png = new ByteArrayOutputStream();
+        ImageIO.write(BatchRenderer.image(panorama, display, labels), "png",
+                png);
+
+        return new Rendering(png.toByteArray(), json(labels));
+    }
+
+    // a request, answered with a part of the rendering of its panorama
+    private final class Request implements Runnable {
+        private final HttpExchange exchange;
+        private final Function<Rendering, byte[]> body;
+        private final String contentType;
+
+        private Request(HttpExchange exchange,
+                Function<Rendering, byte[]> body, String contentType) {
+            this.exchange = exchange;
+            this.body = body;
+            this.contentType = contentType;
+        }
+
+        @Override
+        public void run() {
+            try {
+                handle();
+            } catch (IOException e) {
+                // the client went away, nothing is left to answer
+            } finally {
+                pendingRequests.decrementAndGet();
+            }
+        }
+
+        // answer 503, no handler being available
+        private void reject() {
+            pendingRequests.decrementAndGet();
+            try {
+                refuse(exchange);
+            } catch (IOException e) {
+                // the client went away, nothing is left to answer
+            } finally {
+                exchange.close();
+            }
+        }
+
+        private void handle() throws IOException {
+            try {
+                if (!exchange.getRequestMethod().equals("GET")) {
+                    send(exchange, METHOD_NOT_ALLOWED,
+                            "only GET is allowed");
+                    return;
+                }
+                if (!exchange.getRequestURI().getPath()
+                        .equals(exchange.getHttpContext().getPath())) {
+                    send(exchange, NOT_FOUND, "not found");
+                    return;
+                }
+
+                PanoramaUserParameters parameters;
+                try {
+                    parameters = parameters(
+                            exchange.getRequestURI().getRawQuery());
+                } catch (IllegalArgumentException e) {
+                    send(exchange, BAD_REQUEST, e.getMessage());
+                    return;
+                }
+
+                Rendering rendering;
+                try {
+                    rendering = rendering(parameters).get();
+                } catch (RejectedExecutionException e) {
+                    refuse(exchange);
+                    return;
+                } catch (ExecutionException e) {
+                    if (e.getCause() instanceof RejectedExecutionException) {
+                        refuse(exchange);
+                    } else {
+                        send(exchange, INTERNAL_ERROR, "rendering failed");
+                    }
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    send(exchange, UNAVAILABLE, "interrupted");
+                    return;
+                }
+
+                exchange.getResponseHeaders().set("Content-Type",
+                        contentType);
+                byte[] bytes = body.apply(rendering);
+                exchange.sendResponseHeaders(OK, bytes.length);
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(bytes);
+                }
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+
+    private static void refuse(HttpExchange exchange) throws IOException {
+        exchange.getResponseHeaders().set("Retry-After",
+                Integer.toString(RETRY_AFTER));
+        send(exchange, UNAVAILABLE, "too many requests");
+    }
+
+    private static void send(HttpExchange exchange, int status,
+            String message) throws IOException {
+        byte[] bytes = (message + "\n").getBytes(UTF_8);
+        exchange.getResponseHeaders().set("Content-Type",
+                "text/plain; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * Read the parameters of a panorama from a query
+     *
+     * @param query
+     *            the raw query, the value of each user parameter being given
+     *            under its name in lower case
+     * @return the parameters, sanitized
+     * @throws IllegalArgumentException
+     *             if a parameter is missing or is not an integer
+     */
+    static PanoramaUserParameters parameters(String query) {
+        Map<String, String> values = new HashMap<>();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equal = pair.indexOf('=');
+                if (equal > 0) {
+                    values.put(decode(pair.substring(0, equal)),
+                            decode(pair.substring(equal + 1)));
+                }
+            }
+        }
+
+        Map<UserParameter, Integer> parameters = new EnumMap<>(
+                UserParameter.class);
+        for (UserParameter p : UserParameter.values()) {
+            String name = p.name().toLowerCase(Locale.ROOT);
+            String value = values.get(name);
+            checkArgument(value != null, "missing " + name);
+            try {
+                parameters.put(p, Integer.parseInt(value));
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("invalid " + name);
+            }
+        }
+        return new PanoramaUserParameters(parameters);
+    }
+
+    private static String decode(String s) {
+        try {
+            return URLDecoder.decode(s, "UTF-8");
+        } catch (UnsupportedEncodingException e) {
+            throw new Error(e);
+        }
+    }
+
+    /**
+     * The labels as a JSON array
+     *
+     * @param labels
+     *            the labels
+     * @return the JSON array
+     */
+    static String json(List<SummitLabel> labels) {
+        StringBuilder b = new StringBuilder("[");
+        for (SummitLabel l : labels) {
+            if (b.length() > 1) {
+                b.append(',');
+            }
+            b.append("{\"name\":");
+            appendString(b, l.summit().name());
+            b.append(",\"elevation\":").append(l.summit().elevation())
+                    .append(",\"x\":").append(l.x())
+                    .append(",\"y\":").append(l.y())
+                    .append(",\"textY\":").append(l.textY())
+                    .append(",\"textRotation\":").append(l.textRotation())
+                    .append('}');
+        }
+        return b.append(']').toString();
+    }
+
+    private static void appendString(StringBuilder b, String s) {
+        b.append('"');
+        for (int i = 0; i < s.length(); ++i) {
+            char c = s.charAt(i);
+            if (c == '"' || c == '\\') {
+                b.append('\\').append(c);
+            } else if (c < ' ') {
+                b.append(String.format(Locale.ROOT, "\\u%04x", (int) c));
+            } else {
+                b.append(c);
+            }
+        }
+        b.append('"');
+    }
+
+    /**
+     * The rendering of a panorama: its image and its labels
+     */
+    static final class Rendering {
+        private final byte[] png;
+        private final String labels;
+
+        private Rendering(byte[] png, String labels) {
+            this.png = png;
+            this.labels = labels;
+        }
+
+        // the bytes taken by the image and the labels
+        private long sizeInBytes() {
+            return png.length + 2L * labels.length();
+        }
+    }
+
+    /**
+     * Serve the panoramas of Alpano, with the DEM and the summits read from
+     * the working directory
+     *
+     * @param args
+     *            the port, optionally followed by the number of workers (the
+     *            number of processors by default) and by the capacity of the
+     *            queue (twice the number of workers by default)
+     * @throws Exception
+     *             if the DEM or the summits cannot be read, or if the port
+     *             cannot be listened to
+     */
+    public static void main(String[] args) throws Exception {
+        if (args.length < 1 || args.length > 3) {
+            System.err.println(
+                    "usage: PanoramaServer <port> [workers] [queue capacity]");
+            System.exit(2);
+        }
+        System.setProperty("java.awt.headless", "true");
+
+        int port = Integer.parseInt(args[0]);
+        int workers = args.length > 1 ? Integer.parseInt(args[1])
+                : Runtime.getRuntime().availableProcessors();
+        int queueCapacity = args.length > 2 ? Integer.parseInt(args[2])
+                : 2 * workers;
+
+        List<Summit> summits = Alpano.loadSummits();
+        PanoramaServer server = new PanoramaServer(Alpano.createDem(),
+                summits, workers, queueCapacity);
+        server.start(new InetSocketAddress(port));
+        System.out.println("listening on port " + server.port());
+    }
+}
@@ -0,0 +1,255 @@
+package ch.epfl.alpano.gui;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.Interval1D;
+import ch.epfl.alpano.Interval2D;
+import ch.epfl.alpano.dem.ContinuousElevationModel;
+import ch.epfl.alpano.dem.DiscreteElevationModel;
+import ch.epfl.alpano.gui.PanoramaServer.Rendering;
+
+public class PanoramaServerTest {
+
+    private static final String SMALL_PANORAMA = "observer_longitude=76500&observer_latitude=467300&observer_elevation=1500"
+            + "&center_azimuth=180&horizontal_field_of_view=60&max_distance=20&width=60&height=20&super_sampling_exponent=0";
+
+    @Test
+    public void parametersReadsTheQuery() {
+        assertEquals(PredefinedPanoramas.NIESEN, PanoramaServer.parameters(
+                "observer_longitude=76500&observer_latitude=467300&observer_elevation=600&center_azimuth=180"
+                        + "&horizontal_field_of_view=110&max_distance=300&width=2500&height=800&super_sampling_exponent=0"));
+    }
+
+    @Test
+    public void parametersSanitizesTheValues() {
+        assertEquals(600, PanoramaServer.parameters(SMALL_PANORAMA.replace("max_distance=20", "max_distance=9999")).maxDistance());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parametersFailsOnMissingParameter() {
+        PanoramaServer.parameters(SMALL_PANORAMA.replace("&width=60", ""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void parametersFailsOnInvalidNumber() {
+        PanoramaServer.parameters(SMALL_PANORAMA.replace("width=60", "width=6O"));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void constructorFailsWithoutWorkers() {
+        new PanoramaServer(new ContinuousElevationModel(new GatedDEM(null)), Collections.emptyList(), 0, 1);
+    }
+
+    @Test
+    public void serverAnswersWithImageAndLabels() throws Exception {
+        PanoramaServer server = new PanoramaServer(new ContinuousElevationModel(new GatedDEM(null)), Collections.emptyList(), 1, 1);
+        server.start(new InetSocketAddress("localhost", 0));
+        try {
+            HttpURLConnection png = get(server, "/panorama.png?" + SMALL_PANORAMA);
+            assertEquals(200, png.getResponseCode());
+            assertEquals("image/png", png.getContentType());
+            byte[] image = readAll(png.getInputStream());
+            assertEquals((byte) 0x89, image[0]);
+            assertEquals('P', image[1]);
+
+            HttpURLConnection labels = get(server, "/labels.json?" + SMALL_PANORAMA);
+            assertEquals(200, labels.getResponseCode());
+            assertEquals("[]", new String(readAll(labels.getInputStream()), UTF_8));
+
+            assertEquals(400, get(server, "/panorama.png?width=60").getResponseCode());
+            assertEquals(404, get(server, "/panorama.png/other?" + SMALL_PANORAMA).getResponseCode());
+
+            HttpURLConnection post = get(server, "/labels.json?" + SMALL_PANORAMA);
+            post.setRequestMethod("POST");
+            assertEquals(405, post.getResponseCode());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void concurrentIdenticalRequestsShareTheirRendering() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        PanoramaServer server = new PanoramaServer(new ContinuousElevationModel(new GatedDEM(gate)), Collections.emptyList(), 1, 1);
+        try {
+            PanoramaUserParameters p = PanoramaServer.parameters(SMALL_PANORAMA);
+            CompletableFuture<Rendering> first = server.rendering(p);
+            CompletableFuture<Rendering> second = server.rendering(p);
+            assertSame(first, second);
+            assertEquals(1, server.renderings());
+
+            gate.countDown();
+            // once done, a new request is given the cached rendering
+            assertSame(first.get(), server.rendering(p).get());
+            assertEquals(1, server.renderings());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void renderingsLargerThanTheCacheAreRenderedAgain() throws Exception {
+        PanoramaServer server = new PanoramaServer(new ContinuousElevationModel(new GatedDEM(null)), Collections.emptyList(), 1, 1, 1);
+        try {
+            PanoramaUserParameters p = PanoramaServer.parameters(SMALL_PANORAMA);
+            Rendering first = server.rendering(p).get();
+            assertTrue(server.rendering(p).get() != first);
+            assertEquals(2, server.renderings());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void requestsBeyondTheHandlersAreRefused() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        // 2 handlers and 2 waiting requests, all waiting for the same rendering
+        PanoramaServer server = new PanoramaServer(new ContinuousElevationModel(new GatedDEM(gate)), Collections.emptyList(), 1, 0);
+        server.start(new InetSocketAddress("localhost", 0));
+        ExecutorService clients = Executors.newFixedThreadPool(4);
+        try {
+            // each request is sent once the previous one is given to a handler
+            List<CompletableFuture<Integer>> accepted = new ArrayList<>();
+            for (int i = 1; i <= 4; ++i) {
+                accepted.add(CompletableFuture.supplyAsync(() -> responseCode(server), clients));
+                while (server.pendingRequests() < i)
+                    Thread.yield();
+            }
+
+            HttpURLConnection refused = get(server, "/panorama.png?" + SMALL_PANORAMA);
+            assertEquals(503, refused.getResponseCode());
+            assertEquals("1", refused.getHeaderField("Retry-After"));
+            assertEquals(4, server.pendingRequests());
+
+            gate.countDown();
+            for (CompletableFuture<Integer> f : accepted)
+                assertEquals(200, (int) f.get());
+            assertEquals(1, server.renderings());
+        } finally {
+            gate.countDown();
+            server.stop();
+            clients.shutdown();
+        }
+    }
+
+    @Test
+    public void stoppedServerCanBeStartedAgain() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        PanoramaServer server = new PanoramaServer(new ContinuousElevationModel(new GatedDEM(gate)), Collections.emptyList(), 1, 1);
+        server.start(new InetSocketAddress("localhost", 0));
+        PanoramaUserParameters p = PanoramaServer.parameters(SMALL_PANORAMA.replace("width=60", "width=61"));
+        CompletableFuture<Rendering> abandoned = server.rendering(p);
+        server.stop();
+        assertTrue(abandoned.isCompletedExceptionally());
+
+        gate.countDown();
+        server.start(new InetSocketAddress("localhost", 0));
+        try {
+            assertEquals(200, responseCode(server));
+            // the abandoned rendering is done again
+            assertTrue(server.rendering(p).get() != null);
+            assertEquals(3, server.renderings());
+        } finally {
+            server.stop();
+        }
+    }
+
+    @Test
+    public void requestsBeyondTheQueueAreRejected() throws Exception {
+        CountDownLatch gate = new CountDownLatch(1);
+        PanoramaServer server = new PanoramaServer(new ContinuousElevationModel(new GatedDEM(gate)), Collections.emptyList(), 1, 1);
+        try {
+            CompletableFuture<Rendering> running = server.rendering(PanoramaServer.parameters(SMALL_PANORAMA));
+            CompletableFuture<Rendering> queued = server.rendering(PanoramaServer.parameters(SMALL_PANORAMA.replace("width=60", "width=61")));
+            PanoramaUserParameters third = PanoramaServer.parameters(SMALL_PANORAMA.replace("width=60", "width=62"));
+            try {
+                server.rendering(third);
+                fail();
+            } catch (RejectedExecutionException e) {
+                // expected
+            }
+            assertEquals(2, server.renderings());
+
+            gate.countDown();
+            running.get();
+            queued.get();
+            server.rendering(third).get();
+            assertEquals(3, server.renderings());
+        } finally {
+            server.stop();
+        }
+    }
+
+    private static HttpURLConnection get(PanoramaServer server, String path) throws IOException {
+        return (HttpURLConnection) new URL("http://localhost:" + server.port() + path).openConnection();
+    }
+
+    // the status of a request of a panorama, once answered
+    private static int responseCode(PanoramaServer server) {
+        try {
+            return get(server, "/panorama.png?" + SMALL_PANORAMA).getResponseCode();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        try (InputStream i = in) {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            for (int n; (n = i.read(buffer)) > 0;) {
+                out.write(buffer, 0, n);
+            }
+            return out.toByteArray();
+        }
+    }
+
+    // a wavy DEM around the observer, whose samples wait for a gate to open
+    private final static class GatedDEM implements DiscreteElevationModel {
+        private final CountDownLatch gate;
+
+        public GatedDEM(CountDownLatch gate) { this.gate = gate; }
+
+        @Override
+        public void close() throws Exception { }
+
+        @Override
+        public Interval2D extent() {
+            return new Interval2D(new Interval1D(5 * 3600, 11 * 3600), new Interval1D(44 * 3600, 48 * 3600));
+        }
+
+        @Override
+        public double elevationSample(int x, int y) {
+            if (gate != null) {
+                try {
+                    gate.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return (1 + Math.sin(x / 50d) * Math.cos(y / 50d)) * 500;
+        }
+    }
+}
@@ -0,0 +1,263 @@
+package ch.epfl.alpano.summit;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.util.AbstractList;
+import java.util.List;
+import java.util.RandomAccess;
+
+import ch.epfl.alpano.GeoPoint;
+
+/**
+ * A gazetteer stored in a compact binary file, read through a memory mapping:
+ * opening it does not depend on the number of summits, which are only created
+ * when asked for.
+ * <p>
+ * The file starts with a header of four ints (magic number, version, number
+ * of summits, size of the names), followed by one record per summit (its
+ * longitude and latitude in radians as doubles, its elevation and the offset
+ * of its name as ints), then by the names, in UTF-8, one after the other. All
+ * the values are big-endian.
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see GazetteerParser
+ */
+public final class BinaryGazetteer {
+
+    private static final int MAGIC = 0x414C5047; // "ALPG"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+    private static final int RECORD_BYTES = 2 * Double.BYTES
+            + 2 * Integer.BYTES;
+
+    private final ByteBuffer buffer;
+    private final int count;
+    private final int namesStart;
+    private final int namesSize;
+
+    private BinaryGazetteer(ByteBuffer buffer, int count, int namesSize) {
+        this.buffer = buffer;
+        this.count = count;
+        this.namesStart = HEADER_BYTES + count * RECORD_BYTES;
+        this.namesSize = namesSize;
+    }
+
+    /**
+     * Convert a gazetteer in the text format to the binary one
+     *
+     * @param textFile
+     *            the file in the text format
+     * @param binaryFile
+     *            the file to be written
+     * @throws IOException
+     *             if the text file is wrongly formatted, or if one of the
+     *             files cannot be read or written
+     * @see GazetteerParser#readSummitsFrom
+     */
+    public static void convert(File textFile, File binaryFile)
+            throws IOException {
+        write(GazetteerParser.readSummitsFrom(textFile), binaryFile);
+    }
+
+    /**
+     * Write summits in the binary format
+     *
+     * @param summits
+     *            the summits
+     * @param file
+     *            the file to be written
+     * @throws IOException
+     *             if the file cannot be written
+     */
+    public static void write(List<Summit> summits, File file)
+            throws IOException {
+        byte[][] names = new byte[summits.size()][];
+        int namesSize = 0;
+        for (int i = 0; i < names.length; ++i) {
+            names[i] = summits.get(i).name().getBytes(UTF_8);
+            namesSize += names[i].length;
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(summits.size());
+            out.writeInt(namesSize);
+
+            int nameOffset = 0;
+            for (int i = 0; i < names.length; ++i) {
+                Summit s = summits.get(i);
+                out.writeDouble(s.position().longitude());
+                out.writeDouble(s.position().latitude());
+                out.writeInt(s.elevation());
+                out.writeInt(nameOffset);
+                nameOffset += names[i].length;
+            }
+
+            for (byte[] name : names) {
+                out.write(name);
+            }
+        }
+    }
+
+    /**
+     * Open a gazetteer in the binary format, mapping its file
+     *
+     * @param file
+     *            the file
+     * @return the gazetteer
+     * @throws IOException
+     *             if the file is wrongly formatted or unreadable
+     */
+    public static BinaryGazetteer open(File file) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(file, "r");
+                FileChannel channel = f.getChannel()) {
+
+            long length = channel.size();
+            if (length < HEADER_BYTES || length > Integer.MAX_VALUE) {
+                throw new IOException("wrongly formatted");
+            }
+
+            ByteBuffer buffer = channel.map(MapMode.READ_ONLY, 0, length);
+            int count = buffer.getInt(2 * Integer.BYTES);
+            int namesSize = buffer.getInt(3 * Integer.BYTES);
+
+            if (buffer.getInt(0) != MAGIC
+                    || buffer.getInt(Integer.BYTES) != VERSION || count < 0
+                    || namesSize < 0 || length != HEADER_BYTES
+                            + (long) count * RECORD_BYTES + namesSize) {
+                throw new IOException("wrongly formatted");
+            }
+
+            return new BinaryGazetteer(buffer, count, namesSize);
+        }
+    }
+
+    /**
+     * Number of summits
+     *
+     * @return the number of summits
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Longitude of a summit, without creating it
+     *
+     * @param index
+     *            the index of the summit
+     * @return the longitude of the summit, in radians
+     * @throws IndexOutOfBoundsException
+     *             if there is no summit at this index
+     */
+    public double longitudeAt(int index) {
+        return buffer.getDouble(record(index));
+    }
+
+    /**
+     * Latitude of a summit, without creating it
+     *
+     * @param index
+     *            the index of the summit
+     * @return the latitude of the summit, in radians
+     * @throws IndexOutOfBoundsException
+     *             if there is no summit at this index
+     */
+    public double latitudeAt(int index) {
+        return buffer.getDouble(record(index) + Double.BYTES);
+    }
+
+    /**
+     * Elevation of a summit, without creating it
+     *
+     * @param index
+     *            the index of the summit
+     * @return the elevation of the summit, in meters
+     * @throws IndexOutOfBoundsException
+     *             if there is no summit at this index
+     */
+    public int elevationAt(int index) {
+        return buffer.getInt(record(index) + 2 * Double.BYTES);
+    }
+
+    /**
+     * Name of a summit
+     *
+     * @param index
+     *            the index of the summit
+     * @return the name of the summit
+     * @throws IndexOutOfBoundsException
+     *             if there is no summit at this index
+     */
+    public String nameAt(int index) {
+        int from = nameOffset(index);
+        int to = index + 1 < count ? nameOffset(index + 1) : namesSize;
+
+        byte[] name = new byte[to - from];
+        for (int i = 0; i < name.length; ++i) {
+            name[i] = buffer.get(namesStart + from + i);
+        }
+        return new String(name, UTF_8);
+    }
+
+    /**
+     * Give a summit
+     *
+     * @param index
+     *            the index of the summit
+     * @return the summit, created by this call
+     * @throws IndexOutOfBoundsException
+     *             if there is no summit at this index
+     */
+    public Summit summit(int index) {
+        return new Summit(nameAt(index),
+                new GeoPoint(longitudeAt(index), latitudeAt(index)),
+                elevationAt(index));
+    }
+
+    /**
+     * Give the summits, as a list creating them when they are read
+     *
+     * @return an unmodifiable view of the summits
+     */
+    public List<Summit> summits() {
+        return new SummitList();
+    }
+
+    private int record(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("no summit " + index);
+        }
+        return HEADER_BYTES + index * RECORD_BYTES;
+    }
+
+    private int nameOffset(int index) {
+        return buffer.getInt(record(index) + 2 * Double.BYTES + Integer.BYTES);
+    }
+
+    private final class SummitList extends AbstractList<Summit>
+            implements RandomAccess {
+        @Override
+        public Summit get(int index) {
+            return summit(index);
+        }
+
+        @Override
+        public int size() {
+            return count;
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package ch.epfl.alpano.summit;
+
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.toRadians;
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static org.junit.Assert.assertEquals;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+
+public class BinaryGazetteerTest {
+
+    @Test(expected = IOException.class)
+    public void openFailsOnTextFile() throws IOException {
+        File f = tempFile();
+        Files.write(f.toPath(), Arrays.asList("  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON"), US_ASCII);
+        BinaryGazetteer.open(f);
+    }
+
+    @Test(expected = IOException.class)
+    public void openFailsOnTruncatedFile() throws IOException {
+        File f = tempFile();
+        BinaryGazetteer.write(randomSummits(newRandom(), 10), f);
+        byte[] bytes = Files.readAllBytes(f.toPath());
+        Files.write(f.toPath(), Arrays.copyOf(bytes, bytes.length - 1));
+        BinaryGazetteer.open(f);
+    }
+
+    @Test
+    public void nonAsciiNamesAreReadBack() throws IOException {
+        File f = tempFile();
+        BinaryGazetteer.write(Arrays.asList(new Summit("DENT DE MORCLÈS", new GeoPoint(0, 0), 2969), new Summit("GRAND MONT\uFFFDCOUA", new GeoPoint(0, 0), 3014)), f);
+        BinaryGazetteer g = BinaryGazetteer.open(f);
+        assertEquals("DENT DE MORCLÈS", g.nameAt(0));
+        assertEquals("GRAND MONT\uFFFDCOUA", g.nameAt(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void summitFailsOnInvalidIndex() throws IOException {
+        File f = tempFile();
+        BinaryGazetteer.write(randomSummits(newRandom(), 3), f);
+        BinaryGazetteer.open(f).summit(3);
+    }
+
+    @Test(expected = UnsupportedOperationException.class)
+    public void summitListIsUnmodifiable() throws IOException {
+        File f = tempFile();
+        BinaryGazetteer.write(randomSummits(newRandom(), 3), f);
+        BinaryGazetteer.open(f).summits().clear();
+    }
+
+    @Test
+    public void emptyGazetteerHasNoSummits() throws IOException {
+        File f = tempFile();
+        BinaryGazetteer.write(Collections.emptyList(), f);
+        assertEquals(0, BinaryGazetteer.open(f).summits().size());
+    }
+
+    @Test
+    public void writtenSummitsAreReadBackExactly() throws IOException {
+        List<Summit> summits = randomSummits(newRandom(), 1000);
+        summits.add(new Summit("", new GeoPoint(0, 0), 0));
+        File f = tempFile();
+        BinaryGazetteer.write(summits, f);
+
+        BinaryGazetteer g = BinaryGazetteer.open(f);
+        assertEquals(summits.size(), g.size());
+        for (int i = 0; i < summits.size(); ++i) {
+            assertSameSummit(summits.get(i), g.summits().get(i));
+            assertEquals(summits.get(i).elevation(), g.elevationAt(i));
+        }
+    }
+
+    @Test
+    public void convertedSummitsAreTheParsedOnes() throws IOException {
+        File text = tempFile();
+        Files.write(text.toPath(), Arrays.asList(
+                "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON",
+                "  6:51:35 46:15:25  3258  H0 B03 C1 DENT DU MIDI",
+                "  7:25:12 45:08:25  1325  R0 E07 BA MONTE CURT"), US_ASCII);
+        File binary = tempFile();
+        BinaryGazetteer.convert(text, binary);
+
+        List<Summit> parsed = GazetteerParser.readSummitsFrom(text);
+        List<Summit> read = BinaryGazetteer.open(binary).summits();
+        assertEquals(parsed.size(), read.size());
+        for (int i = 0; i < parsed.size(); ++i) {
+            assertSameSummit(parsed.get(i), read.get(i));
+        }
+    }
+
+    private static void assertSameSummit(Summit expected, Summit actual) {
+        assertEquals(expected.name(), actual.name());
+        assertEquals(expected.elevation(), actual.elevation());
+        assertEquals(expected.position().longitude(), actual.position().longitude(), 0);
+        assertEquals(expected.position().latitude(), actual.position().latitude(), 0);
+    }
+
+    private static List<Summit> randomSummits(Random rng, int n) {
+        List<Summit> summits = new ArrayList<>();
+        for (int i = 0; i < n; ++i) {
+            char[] name = new char[rng.nextInt(30)];
+            for (int j = 0; j < name.length; ++j) {
+                name[j] = (char) (' ' + rng.nextInt(95));
+            }
+            GeoPoint p = new GeoPoint(toRadians(rng.nextDouble() * 360 - 180), toRadians(rng.nextDouble() * 180 - 90));
+            summits.add(new Summit(new String(name), p, rng.nextInt(9000)));
+        }
+        return summits;
+    }
+
+    private static File tempFile() throws IOException {
+        File f = File.createTempFile("gazetteer", ".bin");
+        f.deleteOnExit();
+        return f;
+    }
+}
@@ -1,34 +1,81 @@
 package ch.epfl.alpano.summit;
 
-import java.io.BufferedReader;
-import static ch.epfl.alpano.Preconditions.*;
+import static java.lang.Math.PI;
+
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.nio.charset.StandardCharsets;
+import java.io.RandomAccessFile;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
-import static java.lang.Integer.parseInt;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import ch.epfl.alpano.GeoPoint;
 
 /**
- * Class used to read a file containing summits (cannot be instantiate)
- * 
+ * Class used to read a file containing summits (cannot be instantiate). The
+ * file is mapped in memory and its lines are parsed directly from its bytes,
+ * the names of the summits being only turned into strings when needed.
+ * <p>
+ * The bytes of the file are read as ASCII, a byte out of it being read as the
+ * replacement character U+FFFD. The lines end with a line feed, a carriage
+ * return or both, and their fields are read as {@link Integer#parseInt}
+ * would, signs included.
+ *
  * @author Mathieu Chevalley (274698)
  * @author Louis Amaudruz (271808)
  */
 public class GazetteerParser {
 
+    // columns of the fields of a line
+    private static final int LONGITUDE_FROM = 0, LONGITUDE_TO = 9;
+    private static final int LATITUDE_FROM = 10, LATITUDE_TO = 18;
+    private static final int ELEVATION_FROM = 20, ELEVATION_TO = 24;
+    private static final int NAME_FROM = 36;
+
+    // average length of the lines of a gazetteer, to estimate their number
+    private static final int TYPICAL_LINE_LENGTH = 50;
+
+    // value of a wrongly written integer, which cannot be written in a field
+    // of at most 9 bytes
+    private static final int INVALID = Integer.MIN_VALUE;
+
+    /**
+     * A receiver of the summits of a file, one after the other
+     */
+    @FunctionalInterface
+    public interface SummitVisitor {
+        /**
+         * Receive a summit
+         *
+         * @param longitude
+         *            the longitude of the summit, in radians
+         * @param latitude
+         *            the latitude of the summit, in radians
+         * @param elevation
+         *            the elevation of the summit, in meters
+         * @param name
+         *            the name of the summit, valid only during this call:
+         *            its <code>toString</code> gives a copy that can be kept
+         */
+        void visit(double longitude, double latitude, int elevation,
+                CharSequence name);
+    }
+
     // private builder, this class cannot be instantiated
     private GazetteerParser() {
     }
 
     /**
      * Reads the summits from a file
-     * 
+     *
      * @param file
      *            file containing the summits
      * @return a list of summit
@@ -36,65 +83,317 @@ public class GazetteerParser {
      *             if input is wrongly formatted or unreadable
      */
     public static List<Summit> readSummitsFrom(File file) throws IOException {
+        List<Summit> summits = new ArrayList<>();
+        forEachSummit(file, (lon, lat, elevation, name) -> summits.add(
+                new Summit(name.toString(), new GeoPoint(lon, lat), elevation)));
+        return Collections.unmodifiableList(summits);
+    }
 
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(
-                new FileInputStream(file), StandardCharsets.US_ASCII))) {
-
-            List<Summit> summits = new ArrayList<>();
+    /**
+     * Reads the summits from a file, giving them one after the other to a
+     * visitor, without building them
+     *
+     * @param file
+     *            file containing the summits
+     * @param visitor
+     *            the visitor receiving the summits, in the order of the file
+     * @throws IOException
+     *             if input is wrongly formatted or unreadable, the visitor
+     *             having received the summits of the lines before the wrongly
+     *             formatted one
+     */
+    public static void forEachSummit(File file, SummitVisitor visitor)
+            throws IOException {
+        ByteBuffer buffer = map(file);
+        LineParser parser = new LineParser(buffer);
 
-            String line = "";
-            // read a line
-            while ((line = reader.readLine()) != null) {
-                summits.add(readSummitLine(line));
+        int lineNumber = 1;
+        for (int from = 0; from < buffer.limit(); ++lineNumber) {
+            from = parser.parse(from, buffer.limit(), visitor);
+            if (from < 0) {
+                throw new IOException(
+                        "wrongly formatted line " + lineNumber);
             }
+        }
+    }
+
+    /**
+     * Reads the summits from a file as a stream, each summit being built when
+     * it is reached. The stream can be parallel, the file being then split
+     * between lines.
+     *
+     * @param file
+     *            file containing the summits
+     * @return the stream of the summits, in the order of the file
+     * @throws IOException
+     *             if the file is unreadable
+     * @see UncheckedIOException thrown by the operations of the stream when a
+     *      line is wrongly formatted
+     */
+    public static Stream<Summit> streamSummitsFrom(File file)
+            throws IOException {
+        ByteBuffer buffer = map(file);
+        return StreamSupport.stream(
+                new SummitSpliterator(buffer, 0, buffer.limit()), false);
+    }
 
-            return Collections.unmodifiableList(summits);
+    // map a whole file, read-only
+    private static ByteBuffer map(File file) throws IOException {
+        try (RandomAccessFile f = new RandomAccessFile(file, "r");
+                FileChannel channel = f.getChannel()) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("file too large");
+            }
+            return channel.map(MapMode.READ_ONLY, 0, channel.size());
         }
     }
 
-    // extract a summit given a line
-    private static Summit readSummitLine(String line) throws IOException {
+    // Convert an angle in degree, minute and second to radian
+    private static double toRadians(double degrees, double minutes,
+            double seconds) {
+        double degree = degrees + minutes / 60 + seconds / 3600;
+
+        return Math.toRadians(degree);
+    }
+
+    // whether a byte is removed at the ends of a field, as by String.trim
+    private static boolean isBlank(byte b) {
+        return b >= 0 && b <= ' ';
+    }
+
+    /**
+     * A parser of the lines of a buffer, reusing the same view of the names
+     */
+    private static final class LineParser {
+        private final ByteBuffer buffer;
+        private final NameView name;
 
-        try {
+        private LineParser(ByteBuffer buffer) {
+            this.buffer = buffer;
+            this.name = new NameView(buffer);
+        }
+
+        // parse the line starting at from, giving its summit to the visitor,
+        // and return the start of the next line, -1 if the line is wrongly
+        // formatted
+        private int parse(int from, int end, SummitVisitor visitor) {
+            int to = from;
+            while (to < end && buffer.get(to) != '\n'
+                    && buffer.get(to) != '\r') {
+                ++to;
+            }
+            int next = to + 1;
+            if (to + 1 < end && buffer.get(to) == '\r'
+                    && buffer.get(to + 1) == '\n') {
+                ++next;
+            }
+
+            if (to - from <= NAME_FROM) {
+                return -1;
+            }
 
-            checkArgument(!line.isEmpty() && line.length() > 36);
+            double longitude = angle(from + LONGITUDE_FROM, from + LONGITUDE_TO);
+            double latitude = angle(from + LATITUDE_FROM, from + LATITUDE_TO);
+            int elevation = integer(from + ELEVATION_FROM, from + ELEVATION_TO,
+                    true);
+            // the summits must have valid positions
+            if (!(longitude >= -PI && longitude <= PI)
+                    || !(latitude >= -PI / 2 && latitude <= PI / 2)
+                    || elevation == INVALID) {
+                return -1;
+            }
+
+            name.set(from + NAME_FROM, to);
+            visitor.visit(longitude, latitude, elevation, name);
+
+            return next;
+        }
 
-            // Longitude
-            String longitude = line.substring(0, 9).trim();
-            String[] hms = longitude.split(":");
-            double longi = toRadians(parseInt(hms[0]), parseInt(hms[1]),
-                    parseInt(hms[2]));
+        // the angle written as degrees:minutes:seconds in the bytes [from, to),
+        // blanks around it apart, NaN if it is wrongly written. Anything after
+        // a third colon is ignored.
+        private double angle(int from, int to) {
+            while (from < to && isBlank(buffer.get(from))) {
+                ++from;
+            }
+            while (to > from && isBlank(buffer.get(to - 1))) {
+                --to;
+            }
 
-            // Latitude
-            String latitude = line.substring(10, 18).trim();
-            hms = latitude.split(":");
-            double lati = toRadians(parseInt(hms[0]), parseInt(hms[1]),
-                    parseInt(hms[2]));
+            int firstColon = indexOf(':', from, to);
+            int secondColon = firstColon < 0 ? -1
+                    : indexOf(':', firstColon + 1, to);
+            if (secondColon < 0) {
+                return Double.NaN;
+            }
+            int thirdColon = indexOf(':', secondColon + 1, to);
 
-            // Position using the latitude and longitude
-            GeoPoint position = new GeoPoint(longi, lati);
+            int degrees = integer(from, firstColon, false);
+            int minutes = integer(firstColon + 1, secondColon, false);
+            int seconds = integer(secondColon + 1,
+                    thirdColon < 0 ? to : thirdColon, false);
+            if (degrees == INVALID || minutes == INVALID
+                    || seconds == INVALID) {
+                return Double.NaN;
+            }
+            return toRadians(degrees, minutes, seconds);
+        }
 
-            // elevation
-            int elevation = parseInt(line.substring(20, 24).trim());
+        // the integer written in the bytes [from, to), blanks around it apart
+        // if trimmed, INVALID if it is wrongly written. The fields being at
+        // most 9 bytes long, it cannot overflow.
+        private int integer(int from, int to, boolean trimmed) {
+            if (trimmed) {
+                while (from < to && isBlank(buffer.get(from))) {
+                    ++from;
+                }
+                while (to > from && isBlank(buffer.get(to - 1))) {
+                    --to;
+                }
+            }
 
-            // Name of the summit
-            String name = line.substring(36).trim();
+            boolean negative = false;
+            if (from < to && (buffer.get(from) == '-'
+                    || buffer.get(from) == '+')) {
+                negative = buffer.get(from) == '-';
+                ++from;
+            }
+            if (from == to) {
+                return INVALID;
+            }
 
-            return new Summit(name, position, elevation);
-        } catch (Exception e) {
-            // if exception, file is wrongly formatted
-            throw new IOException("wrongly formatted");
+            int value = 0;
+            for (int i = from; i < to; ++i) {
+                int digit = buffer.get(i) - '0';
+                if (digit < 0 || digit > 9) {
+                    return INVALID;
+                }
+                value = value * 10 + digit;
+            }
+            return negative ? -value : value;
         }
 
+        // the index of a byte in [from, to), -1 if it is not there
+        private int indexOf(char c, int from, int to) {
+            for (int i = from; i < to; ++i) {
+                if (buffer.get(i) == c) {
+                    return i;
+                }
+            }
+            return -1;
+        }
     }
 
-    // Convert an angle in degree, minute and second to radian
-    private static double toRadians(double degrees, double minutes,
-            double seconds) {
-        assert (degrees >= 0 && minutes >= 0 && seconds >= 0);
-        double degree = degrees + minutes / 60 + seconds / 3600;
+    /**
+     * The name of a summit, read in place in the buffer
+     */
+    private static final class NameView implements CharSequence {
+        private final ByteBuffer buffer;
+        private int from;
+        private int to;
 
-        return Math.toRadians(degree);
+        private NameView(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        // view the bytes [from, to), blanks around them apart
+        private void set(int from, int to) {
+            while (from < to && isBlank(buffer.get(from))) {
+                ++from;
+            }
+            while (to > from && isBlank(buffer.get(to - 1))) {
+                --to;
+            }
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        public int length() {
+            return to - from;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length()) {
+                throw new IndexOutOfBoundsException();
+            }
+            byte b = buffer.get(from + index);
+            return b < 0 ? '\uFFFD' : (char) b;
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return toString().subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            char[] chars = new char[length()];
+            for (int i = 0; i < chars.length; ++i) {
+                chars[i] = charAt(i);
+            }
+            return new String(chars);
+        }
     }
 
+    /**
+     * The summits of the lines of a part of a buffer
+     */
+    private static final class SummitSpliterator
+            implements Spliterator<Summit> {
+        private final ByteBuffer buffer;
+        private final LineParser parser;
+        private int from;
+        private final int end;
+
+        private SummitSpliterator(ByteBuffer buffer, int from, int end) {
+            this.buffer = buffer;
+            this.parser = new LineParser(buffer);
+            this.from = from;
+            this.end = end;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Summit> action) {
+            if (from >= end) {
+                return false;
+            }
+            from = parser.parse(from, end,
+                    (lon, lat, elevation, name) -> action.accept(new Summit(
+                            name.toString(), new GeoPoint(lon, lat), elevation)));
+            if (from < 0) {
+                throw new UncheckedIOException(
+                        new IOException("wrongly formatted"));
+            }
+            return true;
+        }
+
+        @Override
+        public Spliterator<Summit> trySplit() {
+            // split after the end of the line containing the middle
+            int middle = from + (end - from) / 2;
+            while (middle < end && buffer.get(middle) != '\n') {
+                ++middle;
+            }
+            if (middle + 1 >= end) {
+                return null;
+            }
+
+            Spliterator<Summit> prefix = new SummitSpliterator(buffer, from,
+                    middle + 1);
+            from = middle + 1;
+            return prefix;
+        }
+
+        @Override
+        public long estimateSize() {
+            return (end - from) / TYPICAL_LINE_LENGTH + 1;
+        }
+
+        @Override
+        public int characteristics() {
+            return ORDERED | NONNULL | IMMUTABLE;
+        }
+    }
 }
@@ -11,12 +11,14 @@ import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
 import java.nio.file.Files;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.Iterator;
 import java.util.List;
+import java.util.stream.Collectors;
 
 import org.junit.Test;
 
@@ -51,6 +53,28 @@ public class GazetteerParserTest {
         readSummitsFrom(tempFileWithLines(l));
     }
 
+    @Test(expected = IOException.class)
+    public void parserFailsOnOutOfRangeLongitude() throws IOException {
+        String l = "200:00:00 45:08:25  1325  R0 E07 BA MONTE CURT";
+        readSummitsFrom(tempFileWithLines(l));
+    }
+
+    @Test(expected = IOException.class)
+    public void parserFailsOnOutOfRangeLatitude() throws IOException {
+        String l = "  7:25:12 95:00:00  1325  R0 E07 BA MONTE CURT";
+        readSummitsFrom(tempFileWithLines(l));
+    }
+
+    @Test
+    public void parserAcceptsSignedFields() throws IOException {
+        String l = " +7:25:12 -45:8:25   -12  R0 E07 BA MONTE CURT";
+        List<Summit> summits = readSummitsFrom(tempFileWithLines(l));
+        assertEquals(1, summits.size());
+        assertEquals(-12, summits.get(0).elevation());
+        assertEquals(hmsToRad(7, 25, 12), summits.get(0).position().longitude(), 0);
+        assertEquals(hmsToRad(-45, 8, 25), summits.get(0).position().latitude(), 0);
+    }
+
     @Test(expected = UnsupportedOperationException.class)
     public void summitListIsUnmodifiable() throws IOException {
         String l = "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON";
@@ -91,6 +115,72 @@ public class GazetteerParserTest {
         }
     }
 
+    @Test
+    public void parserWorksWithWindowsLineEndings() throws IOException {
+        File f = tempFileWithLines("  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON\r", "  6:51:35 46:15:25  3258  H0 B03 C1 DENT DU MIDI  \r");
+        List<Summit> summits = readSummitsFrom(f);
+        assertEquals(2, summits.size());
+        assertEquals("LE MOLESON", summits.get(0).name());
+        assertEquals("DENT DU MIDI", summits.get(1).name());
+        assertEquals(3258, summits.get(1).elevation());
+    }
+
+    @Test
+    public void parserReplacesNonAsciiBytes() throws IOException {
+        File f = Files.createTempFile("summits", ".txt").toFile();
+        f.deleteOnExit();
+        byte[] line = "  6:38:42 45:18:37  3014  F1 I95 F6 GRAND MONT?COUA\n".getBytes(US_ASCII);
+        line[line.length - 6] = (byte) 0xC9;
+        Files.write(f.toPath(), line);
+        assertEquals("GRAND MONT\uFFFDCOUA", readSummitsFrom(f).get(0).name());
+    }
+
+    @Test
+    public void visitorReceivesTheSummitsInOrder() throws IOException {
+        File f = tempFileWithLines(
+                "  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON",
+                "  6:51:35 46:15:25  3258  H0 B03 C1 DENT DU MIDI",
+                "  7:25:12 45:08:25  1325  R0 E07 BA MONTE CURT");
+        List<Summit> expected = readSummitsFrom(f);
+        List<Summit> visited = new ArrayList<>();
+        GazetteerParser.forEachSummit(f, (lon, lat, elevation, name) -> visited.add(new Summit(name.toString(), new GeoPoint(lon, lat), elevation)));
+        assertSameSummits(expected, visited);
+    }
+
+    @Test
+    public void parallelStreamGivesTheSummitsInOrder() throws IOException {
+        String[] lines = new String[5000];
+        for (int i = 0; i < lines.length; ++i) {
+            lines[i] = String.format("%3d:%02d:%02d %2d:%02d:%02d %5d  R0 E07 BA SUMMIT %d", i % 180, i % 60, (i * 7) % 60, i % 90, (i * 3) % 60, i % 60, i, i);
+        }
+        File f = tempFileWithLines(lines);
+        List<Summit> streamed = GazetteerParser.streamSummitsFrom(f).parallel().collect(Collectors.toList());
+        assertSameSummits(readSummitsFrom(f), streamed);
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void streamFailsOnGarbageLine() throws IOException {
+        File f = tempFileWithLines("  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON", "blabla");
+        GazetteerParser.streamSummitsFrom(f).count();
+    }
+
+    @Test(expected = UncheckedIOException.class)
+    public void streamFailsOnOutOfRangeLongitude() throws IOException {
+        File f = tempFileWithLines("  7:01:02 46:32:56  2002  H1 B01 D7 LE MOLESON",
+                "200:00:00 45:08:25  1325  R0 E07 BA MONTE CURT");
+        GazetteerParser.streamSummitsFrom(f).count();
+    }
+
+    private static void assertSameSummits(List<Summit> expected, List<Summit> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); ++i) {
+            assertEquals(expected.get(i).name(), actual.get(i).name());
+            assertEquals(expected.get(i).elevation(), actual.get(i).elevation());
+            assertEquals(expected.get(i).position().longitude(), actual.get(i).position().longitude(), 0);
+            assertEquals(expected.get(i).position().latitude(), actual.get(i).position().latitude(), 0);
+        }
+    }
+
     private String formatSummit(Summit s) {
         double lon = s.position().longitude();
         double lat = s.position().latitude();
@@ -0,0 +1,286 @@
+package ch.epfl.alpano.summit;
+
+import static ch.epfl.alpano.Math2.PI2;
+import static ch.epfl.alpano.Math2.angularDistance;
+import static ch.epfl.alpano.Math2.floorMod;
+import static ch.epfl.alpano.Preconditions.checkArgument;
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.asin;
+import static java.lang.Math.ceil;
+import static java.lang.Math.cos;
+import static java.lang.Math.floor;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+import static java.lang.Math.sin;
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import ch.epfl.alpano.Distance;
+import ch.epfl.alpano.GeoPoint;
+
+/**
+ * A spatial index of summits: a grid over the longitudes and latitudes of the
+ * summits, each cell knowing the indexes in the list of the summits it
+ * contains, so that the summits close to a point are found without going
+ * through all of them. The list is not copied, so that the summits of a list
+ * creating them when they are read, like the one of a
+ * {@link BinaryGazetteer}, are only created when they are found
+ *
+ * @author Mathieu Chevalley (274698)
+ * @author Louis Amaudruz (271808)
+ *
+ * @see Summit
+ */
+public final class SummitIndex {
+
+    // side of the cells, in radians (a tenth of a degree)
+    private static final double MIN_CELL_SIZE = PI / 1800;
+    // bound of the number of cells, the cells being larger if needed
+    private static final int MAX_CELLS = 1 << 20;
+
+    private final List<Summit> summits;
+    private final double fromLongitude;
+    private final double fromLatitude;
+    private final double cellSize;
+    private final int columns;
+    private final int rows;
+
+    // indexes in the list of the summits sorted by cell, the ones of the
+    // cell i being between cellStarts[i] (included) and cellStarts[i + 1]
+    // (excluded)
+    private final int[] cellStarts;
+    private final int[] summitIndexes;
+
+    /**
+     * Construct the index of some summits, each of them being read once
+     *
+     * @param summits
+     *            the summits, which must not be modified afterwards
+     * @throws NullPointerException
+     *             if summits or one of them is <code>null</code>
+     */
+    public SummitIndex(List<Summit> summits) {
+        this.summits = Collections.unmodifiableList(requireNonNull(summits));
+
+        // the positions are only kept while the index is built
+        double[] longitudes = new double[summits.size()];
+        double[] latitudes = new double[summits.size()];
+        double minLon = PI, minLat = PI, maxLon = -PI, maxLat = -PI;
+        for (int i = 0; i < longitudes.length; ++i) {
+            GeoPoint p = summits.get(i).position();
+            longitudes[i] = p.longitude();
+            latitudes[i] = p.latitude();
+            minLon = min(minLon, longitudes[i]);
+            maxLon = max(maxLon, longitudes[i]);
+            minLat = min(minLat, latitudes[i]);
+            maxLat = max(maxLat, latitudes[i]);
+        }
+        if (summits.isEmpty()) {
+            minLon = maxLon = minLat = maxLat = 0;
+        }
+
+        double size = MIN_CELL_SIZE;
+        while ((floor((maxLon - minLon) / size) + 1)
+                * (floor((maxLat - minLat) / size) + 1) > MAX_CELLS) {
+            size *= 2;
+        }
+
+        fromLongitude = minLon;
+        fromLatitude = minLat;
+        cellSize = size;
+        columns = (int) floor((maxLon - minLon) / size) + 1;
+        rows = (int) floor((maxLat - minLat) / size) + 1;
+
+        // counting sort of the summits by cell
+        int[] cells = new int[longitudes.length];
+        cellStarts = new int[columns * rows + 1];
+        for (int i = 0; i < cells.length; ++i) {
+            cells[i] = cellRow(latitudes[i]) * columns
+                    + cellColumn(longitudes[i]);
+            ++cellStarts[cells[i] + 1];
+        }
+        for (int c = 0; c < columns * rows; ++c) {
+            cellStarts[c + 1] += cellStarts[c];
+        }
+        summitIndexes = new int[cells.length];
+        int[] next = Arrays.copyOf(cellStarts, columns * rows);
+        for (int i = 0; i < cells.length; ++i) {
+            summitIndexes[next[cells[i]]++] = i;
+        }
+    }
+
+    /**
+     * The indexed summits
+     *
+     * @return the summits, in the order they were given
+     */
+    public List<Summit> summits() {
+        return summits;
+    }
+
+    /**
+     * Gives the summits at most at a given distance of a point, in the order
+     * they were given to the index
+     *
+     * @param center
+     *            the point
+     * @param maxDistance
+     *            the distance, in meters
+     * @return the summits close to the point
+     * @throws NullPointerException
+     *             if the point is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the distance is negative
+     */
+    public List<Summit> summitsWithin(GeoPoint center, double maxDistance) {
+        requireNonNull(center);
+        checkArgument(maxDistance >= 0);
+
+        List<Summit> close = new ArrayList<>();
+        for (int i : candidates(center, maxDistance, 0, PI)) {
+            Summit s = summits.get(i);
+            if (center.distanceTo(s.position()) <= maxDistance) {
+                close.add(s);
+            }
+        }
+        return close;
+    }
+
+    /**
+     * Gives the summits at most at a given distance of a point and in a
+     * sector of azimuths around it, in the order they were given to the
+     * index. The cells which cannot contain a point of the sector are skipped
+     * without reading their summits
+     *
+     * @param center
+     *            the point
+     * @param maxDistance
+     *            the distance, in meters
+     * @param centerAzimuth
+     *            the azimuth of the middle of the sector
+     * @param halfAngle
+     *            half the angle of the sector, at least pi for all the
+     *            azimuths
+     * @return the summits close to the point, in the sector
+     * @throws NullPointerException
+     *             if the point is <code>null</code>
+     * @throws IllegalArgumentException
+     *             if the distance or the angle is negative
+     */
+    public List<Summit> summitsWithin(GeoPoint center, double maxDistance,
+            double centerAzimuth, double halfAngle) {
+        requireNonNull(center);
+        checkArgument(maxDistance >= 0 && halfAngle >= 0);
+
+        List<Summit> close = new ArrayList<>();
+        for (int i : candidates(center, maxDistance, centerAzimuth,
+                halfAngle)) {
+            Summit s = summits.get(i);
+            if (center.distanceTo(s.position()) <= maxDistance
+                    && abs(angularDistance(centerAzimuth,
+                            center.azimuthTo(s.position()))) <= halfAngle) {
+                close.add(s);
+            }
+        }
+        return close;
+    }
+
+    // indexes of the summits of the cells intersecting the bounding box of
+    // the points close to the center and which may contain a point of the
+    // sector, in increasing order
+    private int[] candidates(GeoPoint center, double maxDistance,
+            double centerAzimuth, double halfAngle) {
+        double angle = Distance.toRadians(maxDistance);
+        double lat = center.latitude();
+
+        // the half width in longitude of the box, all the longitudes if the
+        // circle contains a pole
+        double halfWidth = PI;
+        if (abs(lat) + angle < PI / 2) {
+            halfWidth = asin(min(1, sin(angle) / cos(lat)));
+        }
+
+        int[] found = new int[16];
+        int count = 0;
+
+        double lon = center.longitude();
+        double[][] lonRanges = { { lon - halfWidth, lon + halfWidth },
+                { lon - halfWidth + 2 * PI, lon + halfWidth + 2 * PI },
+                { lon - halfWidth - 2 * PI, lon + halfWidth - 2 * PI } };
+
+        int fromRow = max(0, (int) floor((lat - angle - fromLatitude) / cellSize));
+        int toRow = min(rows - 1,
+                (int) ceil((lat + angle - fromLatitude) / cellSize));
+
+        boolean[] seenColumns = new boolean[columns];
+        for (double[] range : lonRanges) {
+            int fromColumn = max(0,
+                    (int) floor((range[0] - fromLongitude) / cellSize));
+            int toColumn = min(columns - 1,
+                    (int) ceil((range[1] - fromLongitude) / cellSize));
+
+            for (int c = fromColumn; c <= toColumn; ++c) {
+                if (seenColumns[c]) {
+                    continue;
+                }
+                seenColumns[c] = true;
+
+                for (int r = fromRow; r <= toRow; ++r) {
+                    int cell = r * columns + c;
+                    if (cellStarts[cell] == cellStarts[cell + 1]
+                            || (halfAngle < PI && !mayReach(r, c, center,
+                                    centerAzimuth, halfAngle))) {
+                        continue;
+                    }
+                    for (int k = cellStarts[cell]; k < cellStarts[cell
+                            + 1]; ++k) {
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, 2 * count);
+                        }
+                        found[count++] = summitIndexes[k];
+                    }
+                }
+            }
+        }
+
+        int[] candidates = Arrays.copyOf(found, count);
+        Arrays.sort(candidates);
+        return candidates;
+    }
+
+    // tell if a cell may contain a point of a sector. The points of a cell
+    // are at most at its side of its center, and at one and a half side of
+    // the center moved into the valid latitudes and longitudes, so that the
+    // cell is in a circle seen from the center of the sector under an angle
+    // the sector must reach.
+    private boolean mayReach(int row, int column, GeoPoint center,
+            double centerAzimuth, double halfAngle) {
+        GeoPoint cellCenter = new GeoPoint(
+                floorMod(fromLongitude + (column + 0.5) * cellSize + PI, PI2)
+                        - PI,
+                max(-PI / 2,
+                        min(PI / 2, fromLatitude + (row + 0.5) * cellSize)));
+        double radius = 1.5 * cellSize;
+        double distance = Distance.toRadians(center.distanceTo(cellCenter));
+        if (distance <= radius || distance + radius >= PI) {
+            return true;
+        }
+
+        double seenHalfAngle = asin(min(1, sin(radius) / sin(distance)));
+        return abs(angularDistance(centerAzimuth,
+                center.azimuthTo(cellCenter))) <= halfAngle + seenHalfAngle;
+    }
+
+    private int cellColumn(double longitude) {
+        return (int) floor((longitude - fromLongitude) / cellSize);
+    }
+
+    private int cellRow(double latitude) {
+        return (int) floor((latitude - fromLatitude) / cellSize);
+    }
+}
@@ -0,0 +1,176 @@
+package ch.epfl.alpano.summit;
+
+import static ch.epfl.test.TestRandomizer.RANDOM_ITERATIONS;
+import static ch.epfl.test.TestRandomizer.newRandom;
+import static java.lang.Math.PI;
+import static java.lang.Math.abs;
+import static java.lang.Math.toRadians;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import ch.epfl.alpano.GeoPoint;
+import ch.epfl.alpano.Math2;
+
+public class SummitIndexTest {
+
+    @Test(expected = NullPointerException.class)
+    public void constructorFailsWithNullSummits() {
+        new SummitIndex(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void summitsWithinFailsWithNegativeDistance() {
+        new SummitIndex(Collections.emptyList()).summitsWithin(new GeoPoint(0, 0), -1);
+    }
+
+    @Test
+    public void summitsWithinWorksWithoutSummits() {
+        assertEquals(0, new SummitIndex(Collections.emptyList()).summitsWithin(new GeoPoint(0, 0), 100_000).size());
+    }
+
+    @Test
+    public void summitsWithinGivesTheCloseSummitsInOrder() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, 5, 12, 44, 48, 20_000);
+        SummitIndex index = new SummitIndex(summits);
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            GeoPoint c = new GeoPoint(toRadians(4 + rng.nextDouble() * 10), toRadians(43 + rng.nextDouble() * 6));
+            double d = rng.nextDouble() * 300_000;
+            assertEquals(bruteForce(summits, c, d), index.summitsWithin(c, d));
+        }
+    }
+
+    @Test
+    public void summitsWithinWorksAcrossTheAntimeridianAndNearThePoles() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, -180, 180, -89, 89, 5_000);
+        SummitIndex index = new SummitIndex(summits);
+        GeoPoint[] centers = { new GeoPoint(toRadians(179.9), toRadians(10)),
+                new GeoPoint(toRadians(-179.5), toRadians(-30)),
+                new GeoPoint(toRadians(20), toRadians(88)) };
+        for (GeoPoint c : centers)
+            for (double d : new double[] { 100_000, 1_000_000, 5_000_000 })
+                assertEquals(bruteForce(summits, c, d), index.summitsWithin(c, d));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void summitsWithinFailsWithNegativeAngle() {
+        new SummitIndex(Collections.emptyList()).summitsWithin(new GeoPoint(0, 0), 1, 0, -1);
+    }
+
+    @Test
+    public void summitsWithinSectorGivesTheCloseSummitsInTheSectorInOrder() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, 5, 12, 44, 48, 20_000);
+        SummitIndex index = new SummitIndex(summits);
+        for (int i = 0; i < RANDOM_ITERATIONS; ++i) {
+            GeoPoint c = new GeoPoint(toRadians(4 + rng.nextDouble() * 10), toRadians(43 + rng.nextDouble() * 6));
+            double d = rng.nextDouble() * 300_000;
+            double a = rng.nextDouble() * 2 * PI;
+            double h = rng.nextDouble() * PI;
+            assertEquals(bruteForce(summits, c, d, a, h), index.summitsWithin(c, d, a, h));
+        }
+    }
+
+    @Test
+    public void summitsWithinSectorWorksAcrossTheAntimeridianAndNearThePoles() {
+        Random rng = newRandom();
+        List<Summit> summits = randomSummits(rng, -180, 180, -89, 89, 5_000);
+        SummitIndex index = new SummitIndex(summits);
+        GeoPoint[] centers = { new GeoPoint(toRadians(179.9), toRadians(10)),
+                new GeoPoint(toRadians(-179.5), toRadians(-30)),
+                new GeoPoint(toRadians(20), toRadians(88)) };
+        for (GeoPoint c : centers)
+            for (double d : new double[] { 100_000, 1_000_000, 5_000_000 })
+                for (double a : new double[] { 0, PI / 2, 3 * PI / 2 })
+                    for (double h : new double[] { 0.01, PI / 6, PI })
+                        assertEquals(bruteForce(summits, c, d, a, h), index.summitsWithin(c, d, a, h));
+    }
+
+    @Test
+    public void summitsOutOfTheSectorAreMostlyNotRead() {
+        List<Summit> summits = randomSummits(newRandom(), 5, 12, 44, 48, 10_000);
+        int[] reads = new int[1];
+        List<Summit> counted = new AbstractList<Summit>() {
+            @Override
+            public Summit get(int index) {
+                ++reads[0];
+                return summits.get(index);
+            }
+
+            @Override
+            public int size() {
+                return summits.size();
+            }
+        };
+        SummitIndex index = new SummitIndex(counted);
+        GeoPoint c = new GeoPoint(toRadians(8), toRadians(46));
+
+        reads[0] = 0;
+        index.summitsWithin(c, 200_000);
+        int all = reads[0];
+        reads[0] = 0;
+        assertEquals(bruteForce(summits, c, 200_000, PI / 2, PI / 12), index.summitsWithin(c, 200_000, PI / 2, PI / 12));
+        assertTrue(reads[0] < all / 4);
+    }
+
+    @Test
+    public void summitsAreOnlyReadWhenIndexedOrFound() {
+        List<Summit> summits = randomSummits(newRandom(), 5, 12, 44, 48, 10_000);
+        int[] reads = new int[1];
+        List<Summit> counted = new AbstractList<Summit>() {
+            @Override
+            public Summit get(int index) {
+                ++reads[0];
+                return summits.get(index);
+            }
+
+            @Override
+            public int size() {
+                return summits.size();
+            }
+        };
+        SummitIndex index = new SummitIndex(counted);
+        assertEquals(summits.size(), reads[0]);
+
+        reads[0] = 0;
+        GeoPoint c = new GeoPoint(toRadians(7), toRadians(46));
+        assertEquals(bruteForce(summits, c, 20_000), index.summitsWithin(c, 20_000));
+        assertTrue(reads[0] < summits.size() / 10);
+    }
+
+    private static List<Summit> bruteForce(List<Summit> summits, GeoPoint c, double d) {
+        List<Summit> close = new ArrayList<>();
+        for (Summit s : summits)
+            if (c.distanceTo(s.position()) <= d)
+                close.add(s);
+        return close;
+    }
+
+    private static List<Summit> bruteForce(List<Summit> summits, GeoPoint c, double d, double a, double h) {
+        List<Summit> close = new ArrayList<>();
+        for (Summit s : bruteForce(summits, c, d))
+            if (abs(Math2.angularDistance(a, c.azimuthTo(s.position()))) <= h)
+                close.add(s);
+        return close;
+    }
+
+    private static List<Summit> randomSummits(Random rng, double fromLon, double toLon, double fromLat, double toLat, int count) {
+        List<Summit> summits = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            GeoPoint p = new GeoPoint(
+                    toRadians(fromLon + rng.nextDouble() * (toLon - fromLon)),
+                    toRadians(fromLat + rng.nextDouble() * (toLat - fromLat)));
+            summits.add(new Summit("S" + i, p, rng.nextInt(4000)));
+        }
+        return summits;
+    }
+}